@@ -0,0 +1,101 @@
+package com.streamliners.galleryapp;
+
+import android.app.Instrumentation;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.streamliners.galleryapp.adapters.ItemAdapter;
+import com.streamliners.galleryapp.models.Item;
+import com.streamliners.galleryapp.store.ChangeTrackingList;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of a long scroll through the cards
+ * Only the cards attached to the list are tracked, so the drag mode is applied to as many cards
+ * as fit on the screen, however far the list was scrolled.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LongScrollTest {
+
+    private static final int ITEM_COUNT = 1000;
+    private static final int SCROLL_STEPS = 60;
+
+    @Test
+    public void longScroll_tracksOnlyAttachedCards() {
+        final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+
+        try (ActivityScenario<GalleryActivity> scenario = ActivityScenario.launch(GalleryActivity.class)) {
+            final ItemAdapter[] adapter = new ItemAdapter[1];
+            final RecyclerView[] list = new RecyclerView[1];
+
+            //Shown by an adapter of its own, so the saved gallery isn't modified
+            scenario.onActivity(new ActivityScenario.ActivityAction<GalleryActivity>() {
+                @Override
+                public void perform(GalleryActivity activity) {
+                    ChangeTrackingList items = new ChangeTrackingList();
+                    items.load(cards());
+                    adapter[0] = new ItemAdapter(activity, items);
+                    list[0] = activity.b.list;
+                    list[0].setAdapter(adapter[0]);
+                }
+            });
+            instrumentation.waitForIdleSync();
+
+            for (int step = 0; step < SCROLL_STEPS; step++) {
+                scroll(scenario, list[0], 1);
+                instrumentation.waitForIdleSync();
+                assertAttachedCards(scenario, adapter[0], list[0]);
+            }
+
+            //Cards coming back from the view cache are tracked again
+            scenario.onActivity(new ActivityScenario.ActivityAction<GalleryActivity>() {
+                @Override
+                public void perform(GalleryActivity activity) {
+                    adapter[0].setMode(1);
+                }
+            });
+            for (int step = 0; step < SCROLL_STEPS; step++) {
+                scroll(scenario, list[0], -1);
+                instrumentation.waitForIdleSync();
+                assertAttachedCards(scenario, adapter[0], list[0]);
+            }
+        }
+    }
+
+    private static List<Item> cards() {
+        List<Item> cards = new ArrayList<>();
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            //Missing images, the cards are laid out without downloading anything
+            cards.add(new Item("file:///nonexistent/" + i + ".jpg", 0xFF000000 | i * 997, "Card " + i));
+        }
+        return cards;
+    }
+
+    private static void scroll(ActivityScenario<GalleryActivity> scenario, final RecyclerView list, final int direction) {
+        scenario.onActivity(new ActivityScenario.ActivityAction<GalleryActivity>() {
+            @Override
+            public void perform(GalleryActivity activity) {
+                list.scrollBy(0, direction * list.getHeight());
+            }
+        });
+    }
+
+    private static void assertAttachedCards(ActivityScenario<GalleryActivity> scenario, final ItemAdapter adapter, final RecyclerView list) {
+        scenario.onActivity(new ActivityScenario.ActivityAction<GalleryActivity>() {
+            @Override
+            public void perform(GalleryActivity activity) {
+                assertEquals(list.getChildCount(), adapter.getAttachedCardCount());
+            }
+        });
+    }
+}
@@ -4,4 +4,5 @@ public class Constants {
 
     public static final String NO_OF_IMG = "noOfItemsInTheList";
     public static final String ITEMS = "items";
+    public static final String LAST_ITEM_ID = "lastItemId";
 }
@@ -1,21 +1,15 @@
 package com.streamliners.galleryapp;
 
-import android.Manifest;
 import android.annotation.SuppressLint;
-import android.content.ContentValues;
+import android.content.ClipData;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.content.pm.PackageManager;
-import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.drawable.Drawable;
 import android.net.Uri;
-import android.os.Build;
 import android.os.Bundle;
-import android.provider.MediaStore;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -24,20 +18,30 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.view.ActionMode;
 import androidx.appcompat.widget.SearchView;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
-import com.google.gson.Gson;
 import com.streamliners.galleryapp.adapters.ItemAdapter;
 import com.streamliners.galleryapp.databinding.ActivityGalleryBinding;
 import com.streamliners.galleryapp.databinding.ItemCardBinding;
+import com.streamliners.galleryapp.helpers.AppExecutors;
+import com.streamliners.galleryapp.helpers.DeviceImporter;
 import com.streamliners.galleryapp.helpers.ItemTouchHelperCallback;
+import com.streamliners.galleryapp.helpers.LabelingService;
+import com.streamliners.galleryapp.helpers.ShareService;
 import com.streamliners.galleryapp.models.Item;
+import com.streamliners.galleryapp.store.ChangeTrackingList;
+import com.streamliners.galleryapp.store.GalleryStore;
+import com.streamliners.galleryapp.store.ItemChange;
+import com.streamliners.galleryapp.store.PagedItemList;
 
-import java.io.OutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -46,8 +50,19 @@ public class GalleryActivity extends AppCompatActivity {
     //create object for view binding
     ActivityGalleryBinding b;
 
+    private static final String TAG = "GalleryActivity";
+
     SharedPreferences preferences;
-    List<Item> items = new ArrayList<>();
+    GalleryStore store;
+    ChangeTrackingList items = new ChangeTrackingList();
+    boolean isLoaded;
+
+    //Items published to the adapter per batch while loading
+    private static final int FIRST_BATCH_SIZE = 20;
+    private static final int BATCH_SIZE = 500;
+
+    //Galleries larger than this are decoded page by page instead of loaded in memory
+    private static final int PAGED_LIST_THRESHOLD = 5000;
 
     private static final int REQUEST_LOAD_IMAGE = 0;
 
@@ -58,7 +73,9 @@ public class GalleryActivity extends AppCompatActivity {
 
     ItemCardBinding binding;
     int mode = 0;
-    private static final int RESULT = 1001 ;
+    ActionMode selectionMode;
+    DeviceImporter deviceImporter;
+    ImageOperationsDialog addImageDialog;
 
     /**
      * It initialises the activity.
@@ -73,11 +90,19 @@ public class GalleryActivity extends AppCompatActivity {
 
         setTitle("Gallery");
 
+        //Warm up the labeler before the first image is added
+        LabelingService.getInstance().acquire();
+
         preferences = getPreferences(MODE_PRIVATE);
+        store = GalleryStore.open(this);
 
-        loadSharedPreferences();
+        //Items added before the store is opened in the background must not reuse a saved id
+        Item.reserveId(preferences.getLong(Constants.LAST_ITEM_ID, 0));
 
+        setupList();
         enableDisableDrag();
+
+        loadItems();
     }
 
 
@@ -133,7 +158,7 @@ public class GalleryActivity extends AppCompatActivity {
         }
 
         if (item.getItemId() == R.id.sort_Alphabetically){
-            adapter.sortItemsAlphabetically();
+            showSortDialog();
             return true;
         }
 
@@ -142,18 +167,44 @@ public class GalleryActivity extends AppCompatActivity {
 
 
 
+    /**
+     * To choose the order in which the cards are shown
+     */
+    private void showSortDialog() {
+        final int[] modes = {ItemAdapter.SORT_MANUAL, ItemAdapter.SORT_LABEL, ItemAdapter.SORT_HUE, ItemAdapter.SORT_DATE_ADDED};
+        int checked = 0;
+        for (int i = 0; i < modes.length; i++) {
+            if (modes[i] == adapter.getSortMode()) {
+                checked = i;
+            }
+        }
+
+        new MaterialAlertDialogBuilder(this)
+                .setTitle(R.string.sort_by)
+                .setSingleChoiceItems(R.array.sort_modes, checked, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        adapter.sortBy(modes[which]);
+                        dialog.dismiss();
+                    }
+                })
+                .show();
+    }
+
+
+
     //Fetch Image from Internet------------------------------------------------------------------------
 
     /**
      * To show addImage dialog
      */
     private void showAddImageDialog() {
-        new ImageOperationsDialog()
+        addImageDialog = new ImageOperationsDialog();
+        addImageDialog
                 .show(this, new ImageOperationsDialog.OnCompleteListener() {
                     @Override
                     public void onImageAdded(Item item) {
-                        items.add(item);
-                        inflateViewForItem();
+                        addItem(item);
                     }
 
                     @Override
@@ -163,21 +214,47 @@ public class GalleryActivity extends AppCompatActivity {
                                 .setMessage(error)
                                 .show();
                     }
+                }, new ImageOperationsDialog.OnBatchListener() {
+                    @Override
+                    public void onImagesAdded(List<Item> items) {
+                        addItems(items);
+                    }
                 });
     }
 
     /**
-     * To inflate view for the item
+     * To add an item at the end of the list
+     * @param item item to be added
+     */
+    private void addItem(Item item) {
+        items.add(item);
+        adapter.onItemsAppended(items.size() - 1, 1);
+        updateEmptyState();
+    }
+
+    /**
+     * To add items at the end of the list, notifying the adapter once
+     * @param added items to be added
      */
-    private void inflateViewForItem() {
+    private void addItems(List<Item> added) {
+        int start = items.size();
+        items.addAll(added);
+        adapter.onItemsAppended(start, added.size());
+        updateEmptyState();
+    }
+
+    /**
+     * To set up the list
+     * The adapter & touch helpers are created once & then updated as items are loaded or added.
+     */
+    private void setupList() {
 
         adapter = new ItemAdapter(this, items);
 
         b.list.setLayoutManager(new LinearLayoutManager(this));
 
-        ItemTouchHelper itemTouchHelper1 = new ItemTouchHelper(simpleItemTouchCallback);
-        adapter.setListItemAdapterHelper(itemTouchHelper);
-        itemTouchHelper1.attachToRecyclerView(b.list);
+        ItemTouchHelper swipeTouchHelper = new ItemTouchHelper(simpleItemTouchCallback);
+        swipeTouchHelper.attachToRecyclerView(b.list);
 
         ItemTouchHelper.Callback callback = new ItemTouchHelperCallback(adapter);
         itemTouchHelper = new ItemTouchHelper(callback);
@@ -185,7 +262,12 @@ public class GalleryActivity extends AppCompatActivity {
 
         b.list.setAdapter(adapter);
         dragDropButtonRestore();
+    }
 
+    /**
+     * To show the no items text when the list is empty
+     */
+    private void updateEmptyState() {
         if (items.isEmpty()) {
             b.noItemsTV.setVisibility(View.VISIBLE);
         } else {
@@ -199,21 +281,23 @@ public class GalleryActivity extends AppCompatActivity {
     //Fetch Image from Device---------------------------------------------------------------------------
 
     /**
-     * To add image from the device
+     * To add images from the device
+     * Many images can be picked; documents keep their permission, so the cards still load after a restart.
      */
     private void addFromDevice() {
 
         //Send the data
-        Intent intent = new Intent(
-                Intent.ACTION_PICK,
-                MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("image/*");
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
 
         //noinspection deprecation
         startActivityForResult(intent, REQUEST_LOAD_IMAGE);
     }
 
     /**
-     * Gets the result (image from device here)
+     * Gets the result (images from device here)
      * @param requestCode : the request code of this intent
      * @param resultCode : the purpose for which this process/action was done/performed,
      *                     if fulfilled then RESULT_OK
@@ -227,36 +311,91 @@ public class GalleryActivity extends AppCompatActivity {
         if (requestCode == REQUEST_LOAD_IMAGE && resultCode == RESULT_OK && null != data) {
 
             //get data
-            Uri selectedImage = data.getData();
-            String[] filePathColumn = {MediaStore.Images.Media.DATA};
-            Cursor cursor = getContentResolver().query(selectedImage, filePathColumn, null, null, null);
-            cursor.moveToFirst();
-            int columnIndex = cursor.getColumnIndex(filePathColumn[0]);
-            String picturePath = cursor.getString(columnIndex);
-            cursor.close();
-
-            String uri = selectedImage.toString();
-
-            //show data
-            new ImageOperationsDialog().fetchDataFromDevice(uri, this, new ImageOperationsDialog.OnCompleteListener() {
-                @Override
-                public void onImageAdded(Item item) {
-                    items.add(item);
-                    inflateViewForItem();
-                    b.noItemsTV.setVisibility(View.GONE);
+            List<Uri> uris = new ArrayList<>();
+            ClipData clipData = data.getClipData();
+            if (clipData != null) {
+                for (int i = 0; i < clipData.getItemCount(); i++) {
+                    uris.add(clipData.getItemAt(i).getUri());
                 }
+            } else if (data.getData() != null) {
+                uris.add(data.getData());
+            }
 
-                @Override
-                public void onError(String error) {
-                    new MaterialAlertDialogBuilder(GalleryActivity.this)
-                            .setTitle("ERROR")
-                            .setMessage(error)
-                            .show();
-                }
-            });
+            if (uris.size() == 1) {
+                showDeviceImage(uris.get(0));
+            } else if (uris.size() > 1) {
+                importFromDevice(uris);
+            }
         }
     }
 
+    /**
+     * To let the user choose the color & label of a single picked image
+     * @param selectedImage content uri of the image
+     */
+    private void showDeviceImage(Uri selectedImage) {
+        try {
+            getContentResolver().takePersistableUriPermission(selectedImage, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e) {
+            Log.d(TAG, "No persistable permission for " + selectedImage);
+        }
+
+        String uri = selectedImage.toString();
+
+        //show data
+        new ImageOperationsDialog().fetchDataFromDevice(uri, this, new ImageOperationsDialog.OnCompleteListener() {
+            @Override
+            public void onImageAdded(Item item) {
+                addItem(item);
+            }
+
+            @Override
+            public void onError(String error) {
+                new MaterialAlertDialogBuilder(GalleryActivity.this)
+                        .setTitle("ERROR")
+                        .setMessage(error)
+                        .show();
+            }
+        });
+    }
+
+    /**
+     * To import many picked images in the background
+     * Every image gets its first color & label and is saved as soon as it is imported,
+     * the progress is shown in the action bar.
+     * @param uris content uris of the images
+     */
+    private void importFromDevice(List<Uri> uris) {
+        if (deviceImporter != null) {
+            deviceImporter.cancel();
+        }
+
+        deviceImporter = new DeviceImporter(this, uris, new DeviceImporter.Listener() {
+            @Override
+            public void onItemImported(Item item) {
+                addItem(item);
+                saveChanges();
+            }
+
+            @Override
+            public void onProgress(int done, int total) {
+                if (getSupportActionBar() != null) {
+                    getSupportActionBar().setSubtitle(getString(R.string.importing_images, done, total));
+                }
+            }
+
+            @Override
+            public void onComplete(int imported, int failed) {
+                deviceImporter = null;
+                if (getSupportActionBar() != null) {
+                    getSupportActionBar().setSubtitle(null);
+                }
+                Toast.makeText(GalleryActivity.this, getString(R.string.images_imported, imported, failed), Toast.LENGTH_SHORT).show();
+            }
+        });
+        deviceImporter.start();
+    }
+
 
 
 
@@ -274,13 +413,10 @@ public class GalleryActivity extends AppCompatActivity {
         public void onSwiped(RecyclerView.ViewHolder viewHolder, int swipeDir) {
 
             int position = viewHolder.getAbsoluteAdapterPosition();
-            items.remove(position);
+            adapter.removeItem(position);
 
             Toast.makeText(GalleryActivity.this, "Image Removed!", Toast.LENGTH_SHORT).show();
-            if (items.isEmpty())
-                b.list.setVisibility(View.VISIBLE);
-            
-            adapter.notifyDataSetChanged();
+            updateEmptyState();
         }
     };
 
@@ -292,26 +428,23 @@ public class GalleryActivity extends AppCompatActivity {
             public void onClick(View v) {
                 if(mode == 0){
                     mode = 1;
-                    adapter.mode = 1;
+                    adapter.setMode(1);
+
+                    //Cards can only be dragged in the manual order
+                    if (adapter.getSortMode() != ItemAdapter.SORT_MANUAL) {
+                        adapter.sortBy(ItemAdapter.SORT_MANUAL);
+                    }
                     Toast.makeText(context,"Drag Enabled!",Toast.LENGTH_SHORT).show();
-                    List<ItemAdapter.ItemViewHolder> holders = adapter.holderList;
                     b.dragListener.setBackgroundTintList(getResources().getColorStateList(R.color.purple_500));
                     b.dragListener.setRippleColor(getResources().getColorStateList(R.color.purple_700));
 
                     b.dragListener.setImageResource(R.drawable.ic_swap_vertical_circle);
-                    for(int i = 0; i < holders.size(); i++){
-                        holders.get(i).eventListenerHandler();
-                    }
                     itemTouchHelper.attachToRecyclerView(b.list);
                 }
                 else{
                     mode = 0;
-                    adapter.mode = 0;
+                    adapter.setMode(0);
                     Toast.makeText(context,"Drag Disabled!",Toast.LENGTH_SHORT).show();
-                    List<ItemAdapter.ItemViewHolder> holders = adapter.holderList;
-                    for(int i = 0; i < holders.size(); i++){
-                        holders.get(i).eventListenerHandler();
-                    }
                     b.dragListener.setBackgroundTintList(getResources().getColorStateList(R.color.purple_700));
                     b.dragListener.setRippleColor(getResources().getColorStateList(R.color.purple_500));
                     b.dragListener.setImageResource(R.drawable.ic_swap_vertical_circle_unselected);
@@ -325,23 +458,15 @@ public class GalleryActivity extends AppCompatActivity {
     @SuppressLint("UseCompatLoadingForColorStateLists")
     void dragDropButtonRestore() {
         if (mode == 1) {
-            adapter.mode = 1;
-            List<ItemAdapter.ItemViewHolder> holders = adapter.holderList;
+            adapter.setMode(1);
             b.dragListener.setBackgroundTintList(getResources().getColorStateList(R.color.purple_500));
             b.dragListener.setRippleColor(getResources().getColorStateList(R.color.purple_700));
 
             b.dragListener.setImageResource(R.drawable.ic_swap_vertical_circle);
-            for (int i = 0; i < holders.size(); i++) {
-                holders.get(i).eventListenerHandler();
-            }
             itemTouchHelper.attachToRecyclerView(b.list);
         } else {
             mode = 0;
-            adapter.mode = 0;
-            List<ItemAdapter.ItemViewHolder> holders = adapter.holderList;
-            for (int i = 0; i < holders.size(); i++) {
-                holders.get(i).eventListenerHandler();
-            }
+            adapter.setMode(0);
             b.dragListener.setBackgroundTintList(getResources().getColorStateList(R.color.purple_700));
             b.dragListener.setRippleColor(getResources().getColorStateList(R.color.purple_500));
             b.dragListener.setImageResource(R.drawable.ic_swap_vertical_circle_unselected);
@@ -375,9 +500,24 @@ public class GalleryActivity extends AppCompatActivity {
             return true;
         }
 
+        //For similar colors option:
+        if (item.getItemId() == R.id.similarColorsCard){
+            int position = adapter.positionOf(adapter.selectedId, adapter.index);
+            if (position >= 0) {
+                adapter.showSimilarColors(adapter.getItem(position).color);
+            }
+            return true;
+        }
+
         //For share image option:
         if(item.getItemId() == R.id.shareCard){
-            sharePermission();
+            shareItem(binding);
+            return true;
+        }
+
+        //For multi-select option:
+        if (item.getItemId() == R.id.selectCard){
+            startSelection();
             return true;
         }
         return super.onContextItemSelected(item);
@@ -388,13 +528,17 @@ public class GalleryActivity extends AppCompatActivity {
      * To edit card
      */
     private void editImage() {
-        int index = adapter.index;
+        final int index = adapter.index;
+        final long id = adapter.selectedId;
         binding = adapter.itemCardBinding;
-        new ImageOperationsDialog().editFetchImage(this, items.get(index), new ImageOperationsDialog.OnCompleteListener() {
+        new ImageOperationsDialog().editFetchImage(this, adapter.getItem(index), new ImageOperationsDialog.OnCompleteListener() {
             @Override
             public void onImageAdded(Item item) {
-                items.set(index,item);
-                adapter.notifyDataSetChanged();
+                //The list may have changed while the dialog was open
+                int position = adapter.positionOf(id, index);
+                if (position >= 0) {
+                    adapter.updateItem(position, item);
+                }
             }
 
             @Override
@@ -411,166 +555,287 @@ public class GalleryActivity extends AppCompatActivity {
 
     //Share Feature -------------------------------------------------------------------------------------------------------------------
 
-    private void sharePermission() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            if (checkSelfPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_DENIED) {
-                String[] permission = {Manifest.permission.WRITE_EXTERNAL_STORAGE};
-
-                requestPermissions(permission, RESULT);
-            }
-
-            else
-            {
-                shareItem(binding);
-            }
-        }
-        else{
-            shareItem(binding);
-        }
-    }
-
-    @Override
-    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
-        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
-        if(grantResults[0] == PackageManager.PERMISSION_GRANTED){
-            shareItem(binding);
-        }
-        else{
-            Toast.makeText(this, "Storage permission Denied", Toast.LENGTH_SHORT).show();
-        }
-    }
-
     /**
      * To share item
+     * The card is drawn here, then encoded in the background & the chooser opens once the file is ready.
+     * Files are shared from the cache dir of the app, so no storage permission is needed.
      * @param binding of view to be shared
      */
     private void shareItem(ItemCardBinding binding){
+        int position = adapter.positionOf(adapter.selectedId, adapter.index);
+        if (position < 0) {
+            return;
+        }
 
-        Bitmap icon = loadBitmapFromView(binding.getRoot());
+        ShareService.getInstance(this).exportCard(adapter.getItem(position), binding.getRoot())
+                .addOnCompleteListener(this, new OnCompleteListener<ShareService.Export>() {
+                    @Override
+                    public void onComplete(@NonNull Task<ShareService.Export> task) {
+                        if (task.isSuccessful()) {
+                            ShareService.share(GalleryActivity.this, task.getResult());
+                        } else {
+                            Log.e(TAG, "Unable to share the card", task.getException());
+                            Toast.makeText(GalleryActivity.this, "Unable to share the image!", Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+    }
 
 
-        // Calling the intent to share the bitmap
-        Intent share = new Intent(Intent.ACTION_SEND);
-        share.setType("image/jpeg");
 
-        ContentValues values = new ContentValues();
-        values.put(MediaStore.Images.Media.TITLE, "title");
-        values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
-        Uri uri = getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                values);
 
 
-        OutputStream outputStream;
-        try {
-            outputStream = getContentResolver().openOutputStream(uri);
-            icon.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
-            outputStream.close();
-        } catch (Exception e) {
-            System.err.println(e.toString());
+    //Multi-select --------------------------------------------------------------------------------------------------------------------
+
+    /**
+     * To start selecting cards, from the long pressed card
+     * The action mode shows the number of checked cards & the bulk actions.
+     */
+    private void startSelection() {
+        if (selectionMode != null) {
+            return;
         }
+        selectionMode = startSupportActionMode(new ActionMode.Callback() {
+            @Override
+            public boolean onCreateActionMode(ActionMode mode, Menu menu) {
+                getMenuInflater().inflate(R.menu.menu_selection, menu);
+                return true;
+            }
+
+            @Override
+            public boolean onPrepareActionMode(ActionMode mode, Menu menu) {
+                return false;
+            }
+
+            @Override
+            public boolean onActionItemClicked(ActionMode mode, MenuItem item) {
+                if (item.getItemId() == R.id.shareSelected) {
+                    exportSelection(false);
+                    return true;
+                }
+                if (item.getItemId() == R.id.exportSelected) {
+                    exportSelection(true);
+                    return true;
+                }
+                return false;
+            }
 
-        share.putExtra(Intent.EXTRA_STREAM, uri);
-        startActivity(Intent.createChooser(share, "Share Image"));
+            @Override
+            public void onDestroyActionMode(ActionMode mode) {
+                selectionMode = null;
+                adapter.stopSelection();
+            }
+        });
+
+        adapter.startSelection(adapter.selectedId, new ItemAdapter.SelectionListener() {
+            @Override
+            public void onSelectionChanged(int count) {
+                if (selectionMode != null) {
+                    selectionMode.setTitle(getString(R.string.selected_count, count));
+                }
+            }
+        });
     }
 
     /**
-     * To Load Bitmap From View
-     * @param view to load the view
-     * @return bitmap i.e screenshot of card
+     * To share the checked cards
+     * Cards are rendered in the background, the chooser opens once all of them are exported.
+     * @param asArchive true to share a single ZIP archive, false to share the images
      */
-    public static Bitmap loadBitmapFromView(View view) {
-        //Define a bitmap with the same size as the view
-        Bitmap returnedBitmap = Bitmap.createBitmap(view.getWidth(), view.getHeight(), Bitmap.Config.ARGB_8888);
-        //Bind a canvas to it
-        Canvas canvas = new Canvas(returnedBitmap);
-        //Get the view's background
-        Drawable bgDrawable = view.getBackground();
-        if (bgDrawable != null)
-            //has background drawable, then draw it on the canvas
-            bgDrawable.draw(canvas);
-        else
-            //does not have background drawable, then draw white background on the canvas
-            canvas.drawColor(Color.WHITE);
-        // draw the view on the canvas
-        view.draw(canvas);
-        //return the bitmap
-        return returnedBitmap;
+    private void exportSelection(boolean asArchive) {
+        List<Item> checked = adapter.getCheckedItems();
+        if (checked.isEmpty()) {
+            return;
+        }
+        selectionMode.finish();
+        Toast.makeText(this, getString(R.string.exporting_cards, checked.size()), Toast.LENGTH_SHORT).show();
+
+        ShareService service = ShareService.getInstance(this);
+        int width = b.list.getWidth();
+        if (asArchive) {
+            service.exportArchive(checked, width)
+                    .addOnCompleteListener(this, new OnCompleteListener<ShareService.Export>() {
+                        @Override
+                        public void onComplete(@NonNull Task<ShareService.Export> task) {
+                            if (task.isSuccessful()) {
+                                ShareService.share(GalleryActivity.this, task.getResult());
+                            } else {
+                                onExportFailed(task.getException());
+                            }
+                        }
+                    });
+        } else {
+            service.exportCards(checked, width)
+                    .addOnCompleteListener(this, new OnCompleteListener<List<ShareService.Export>>() {
+                        @Override
+                        public void onComplete(@NonNull Task<List<ShareService.Export>> task) {
+                            if (task.isSuccessful()) {
+                                ShareService.shareAll(GalleryActivity.this, task.getResult());
+                            } else {
+                                onExportFailed(task.getException());
+                            }
+                        }
+                    });
+        }
+    }
+
+    private void onExportFailed(Exception e) {
+        Log.e(TAG, "Unable to export the cards", e);
+        Toast.makeText(this, "Unable to share the images!", Toast.LENGTH_SHORT).show();
     }
 
 
 
 
 
-    //Shared Preferences -------------------------------------------------------------------------------
+    //Gallery Store -------------------------------------------------------------------------------------
 
     /**
-     * To get Json for the Item
-     * We use the GSON library to convert the model class to JSON String and we save that JSON String into the SharedPreferences.
-     * @param item to be added in the gallery activity in a card view
-     * @return json representation of item as a string
+     * To load the items from the store.
+     * Items are read on the disk thread & published to the adapter in batches,
+     * so the first screen of cards is shown before the whole list is parsed.
+     * Items saved in the shared preferences by older versions are migrated into the store once.
      */
-    private String itemToJson(Item item){
-        Gson json = new Gson();
-        return json.toJson(item);
-    }
+    private void loadItems() {
+        b.noItemsTV.setVisibility(View.GONE);
+        final long startTime = SystemClock.elapsedRealtime();
 
+        AppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store.migrateFromPreferences(preferences);
+
+                    if (store.size() >= PAGED_LIST_THRESHOLD) {
+                        loadPagedItems(store.openPagedList());
+                    } else {
+                        loadItemsInBatches(startTime);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to load items", e);
+                }
+
+                onItemsLoaded(startTime);
+            }
+        });
+    }
 
     /**
-     * To get Item from Json
-     * We read back that JSON String and convert it back to the object when we want to read it.
-     * @param string from which the object is to be deserialized into an object of the specified class i.e Item class here
-     * @return an object of class Item from the string
+     * To decode all the items & publish them to the adapter in batches
+     * Called on the disk thread.
+     * @param startTime time at which loading started
+     * @throws IOException if the store can't be read
      */
-    private Item jsonToItem(String string){
-        Gson json2= new Gson();
-        return json2.fromJson(string, Item.class);
+    private void loadItemsInBatches(final long startTime) throws IOException {
+        store.load(FIRST_BATCH_SIZE, BATCH_SIZE, new GalleryStore.LoadListener() {
+            @Override
+            public void onBatch(final List<Item> batch) {
+                AppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        int start = items.size();
+                        items.load(batch);
+                        adapter.onItemsAppended(start, batch.size());
+
+                        if (start == 0) {
+                            Log.d(TAG, "First batch shown in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+                        }
+                    }
+                });
+            }
+        });
     }
 
-
     /**
-     * To get data back from sharedPreferences.
+     * To show a large gallery through a paged list
+     * Only the items around the visible cards are decoded, instead of the whole list.
+     * @param paged paged list of the saved items
      */
-    private void loadSharedPreferences() {
-        int itemCount = this.preferences.getInt(Constants.NO_OF_IMG,0);
-
-        for (int i = 1; i <= itemCount; i++){
-
-            //Make a new item and get objects from json
-            Item item = jsonToItem(this.preferences.getString(Constants.ITEMS + i, ""));
+    private void loadPagedItems(final PagedItemList paged) {
+        AppExecutors.mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                int start = items.size();
+                items.attach(paged);
+                adapter.onItemsAppended(start, items.size() - start);
+            }
+        });
+    }
 
-            items.add(item);
-            inflateViewForItem();
-        }
+    /**
+     * To mark the loading as complete
+     * @param startTime time at which loading started
+     */
+    private void onItemsLoaded(final long startTime) {
+        AppExecutors.mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                isLoaded = true;
+                updateEmptyState();
+                Log.d(TAG, items.size() + " items loaded in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+            }
+        });
     }
 
 
     /**
      * To save the data when the activity is in Pause state
+     * Only the changes made since the last pause are appended to the store on the disk thread;
+     * after a failed write, all the items are written in one transaction instead.
      */
     @Override
     protected void onPause() {
         super.onPause();
+        saveChanges();
+    }
 
-        // Putting all the objects in the shared preferences
-        int itemCount = 0;
-        for (Item item : items) {
+    /**
+     * To append the changes made since the last save to the store, on the disk thread
+     */
+    private void saveChanges() {
+        //Nothing changed & no failed write to recover from
+        if (!items.hasChanges() && !(isLoaded && store.needsRewrite())) {
+            return;
+        }
 
-            // Check for the item
-            if (item != null) {
+        preferences.edit().putLong(Constants.LAST_ITEM_ID, Item.getLastId()).apply();
 
-                // incrementing the index
-                itemCount++;
+        final List<ItemChange> changes = items.drainChanges();
+        //Partially loaded list must never replace the saved one, a paged list keeps its unwritten changes instead
+        final List<Item> snapshot = isLoaded && store.needsRewrite() && !items.isPaged()
+                ? new ArrayList<>(items) : null;
 
-                // Saving the item in the shared preferences
-                preferences.edit()
-                        .putString(Constants.ITEMS + itemCount, itemToJson(item))
-                        .apply();
+        AppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (snapshot != null) {
+                        store.saveAll(snapshot);
+                    } else {
+                        store.append(changes);
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to save items", e);
+                    store.requestRewrite();
+                }
             }
+        });
+    }
+
+    /**
+     * To release the labeler & stop importing or adding a batch of images when the activity is destroyed
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (deviceImporter != null) {
+            deviceImporter.cancel();
+        }
+        if (addImageDialog != null) {
+            addImageDialog.cancel();
         }
-        preferences.edit()
-                .putInt(Constants.NO_OF_IMG, itemCount)
-                .apply();
+        LabelingService.getInstance().release();
     }
 
 
-}
\ No newline at end of file
+}
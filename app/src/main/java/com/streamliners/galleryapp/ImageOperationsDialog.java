@@ -1,14 +1,8 @@
 package com.streamliners.galleryapp;
 
 import android.app.Activity;
-import android.content.ContentValues;
 import android.content.Context;
-import android.content.Intent;
 import android.content.res.ColorStateList;
-import android.graphics.Bitmap;
-import android.graphics.drawable.Drawable;
-import android.net.Uri;
-import android.provider.MediaStore;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.Log;
@@ -19,30 +13,31 @@ import android.widget.CompoundButton;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.CustomTarget;
-import com.bumptech.glide.request.transition.Transition;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
 import com.google.android.material.chip.Chip;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.streamliners.galleryapp.databinding.ChipColorBinding;
 import com.streamliners.galleryapp.databinding.ChipLabelBinding;
 import com.streamliners.galleryapp.databinding.DialogImageOperationsBinding;
+import com.streamliners.galleryapp.helpers.BatchFetcher;
 import com.streamliners.galleryapp.helpers.ItemHelper;
+import com.streamliners.galleryapp.helpers.ShareService;
 import com.streamliners.galleryapp.models.Item;
 
-import java.io.IOException;
-import java.io.OutputStream;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
-public class ImageOperationsDialog implements ItemHelper.OnCompleteListener{
+public class ImageOperationsDialog {
 
     private Context context;
     private OnCompleteListener listener;
+    private OnBatchListener batchListener;
     private DialogImageOperationsBinding b;
     private LayoutInflater inflater;
     private boolean isCustomLabel;
@@ -50,18 +45,21 @@ public class ImageOperationsDialog implements ItemHelper.OnCompleteListener{
     private String url;
     private Item item;
     private boolean isAlreadyChecked;
+    private BatchFetcher batchFetcher;
 
 
     /**
      * Inflate & Show the Dialog
      * @param context : To show the dialog, context is needed; hence, it is passed.
      * @param listener : For creating asynchronous callback.
+     * @param batchListener : To receive the images added in batch mode.
      */
-    void show(Context context, OnCompleteListener listener) {
+    void show(Context context, OnCompleteListener listener, OnBatchListener batchListener) {
 
         if (!initializingDialog(context,listener)){
             return;
         }
+        this.batchListener = batchListener;
 
         //Handle events
         handleDimensionsInput();
@@ -159,39 +157,45 @@ public class ImageOperationsDialog implements ItemHelper.OnCompleteListener{
                     return;
                 }
 
+                String countStr = Objects.requireNonNull(b.countET.getText()).toString().trim();
+                int count = countStr.isEmpty() ? 1 : Integer.parseInt(countStr);
+                if (count < 1) {
+                    b.countET.setError("Please enter at least 1 image!");
+                    return;
+                }
+
                 //Update UI
                 b.inputDimensionsRoot.setVisibility(View.GONE);
+                if (count > 1) {
+                    b.linearProgressIndicator.setIndeterminate(false);
+                }
                 b.progressIndicatorRoot.setVisibility(View.VISIBLE);
 
                 //Hide Keyboard
                 hideKeyboard();
 
+                //Batch of images
+                if (count > 1) {
+                    int width = Integer.parseInt(widthStr.isEmpty() ? heightStr : widthStr);
+                    int height = Integer.parseInt(heightStr.isEmpty() ? widthStr : heightStr);
+                    fetchRandomImages(count, width, height);
+                    return;
+                }
+
                 //Square image
                 if (widthStr.isEmpty()){
                     int height = Integer.parseInt(heightStr);
-                    try {
-                        fetchRandomImage(height);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+                    fetchRandomImage(height);
                 } else if (heightStr.isEmpty()){
                     int width = Integer.parseInt(widthStr);
-                    try {
-                        fetchRandomImage(width);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+                    fetchRandomImage(width);
                 }
 
                 //Rectangular Image
                 else {
                     int height = Integer.parseInt(heightStr);
                     int width = Integer.parseInt(widthStr);
-                    try {
-                        fetchRandomImage(width, height);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+                    fetchRandomImage(width, height);
                 }
             }
         });
@@ -209,9 +213,9 @@ public class ImageOperationsDialog implements ItemHelper.OnCompleteListener{
      * @param width of the rectangle
      * @param height of the rectangle
      */
-    private void fetchRandomImage (int width, int height) throws IOException {
-        new ItemHelper()
-                .fetchData(width, height, context, this);
+    private void fetchRandomImage (int width, int height) {
+        listenTo(ItemHelper.getInstance(context)
+                .fetchData(width, height));
     }
 
     /**
@@ -219,9 +223,70 @@ public class ImageOperationsDialog implements ItemHelper.OnCompleteListener{
      * To fetch random square image
      * @param x : side of the square
      */
-    private void fetchRandomImage(int x) throws IOException {
-        new ItemHelper()
-                .fetchData(x, context, this);
+    private void fetchRandomImage(int x) {
+        listenTo(ItemHelper.getInstance(context)
+                .fetchData(x));
+    }
+
+
+    /**
+     * Batch of Images
+     * To fetch many random images, each added with its first color & label
+     * @param count number of images
+     * @param width of the images
+     * @param height of the images
+     */
+    private void fetchRandomImages(final int count, int width, int height) {
+        b.progressSubtitle.setText(context.getString(R.string.adding_images, 0, count));
+        b.linearProgressIndicator.setMax(count);
+
+        //Images added so far are kept
+        b.cancelBatchBtn.setVisibility(View.VISIBLE);
+        b.cancelBatchBtn.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                cancel();
+            }
+        });
+
+        batchFetcher = new BatchFetcher(context, count, width, height, new BatchFetcher.Listener() {
+            @Override
+            public void onItemsFetched(List<Item> items) {
+                batchListener.onImagesAdded(items);
+            }
+
+            @Override
+            public void onProgress(int done, int total) {
+                b.progressSubtitle.setText(context.getString(R.string.adding_images, done, total));
+                b.linearProgressIndicator.setProgressCompat(done, true);
+            }
+
+            @Override
+            public void onComplete(int added, int failed) {
+                batchFetcher = null;
+                dialog.dismiss();
+                if (added == 0) {
+                    listener.onError("Unable to fetch images!");
+                } else if (failed > 0) {
+                    Toast.makeText(context, added + " images added, " + failed + " failed", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+        batchFetcher.start();
+    }
+
+    /**
+     * To stop adding a batch of images & close the dialog, e.g. when the activity is destroyed
+     * Images already added are kept, the ones in flight are dropped.
+     */
+    void cancel() {
+        if (batchFetcher != null) {
+            batchFetcher.cancel();
+            batchFetcher = null;
+        }
+        if (dialog != null && dialog.isShowing()) {
+            dialog.dismiss();
+        }
     }
 
 
@@ -252,8 +317,8 @@ public class ImageOperationsDialog implements ItemHelper.OnCompleteListener{
         b.progressSubtitle.setText(R.string.fetching_image);
         b.progressIndicatorRoot.setVisibility(View.VISIBLE);
 
-        new ItemHelper()
-                .fetchData(url,context,this);
+        listenTo(ItemHelper.getInstance(context)
+                .fetchData(url));
 
     }
 
@@ -402,43 +467,21 @@ public class ImageOperationsDialog implements ItemHelper.OnCompleteListener{
             @Override
             public void onClick(View v) {
                 try{
-                    Glide.with(context)
-                            .asBitmap()
-                            .load(url)
-                            .into(new CustomTarget<Bitmap>() {
+                    //Decoded & encoded in the background, the chooser opens once the file is ready
+                    ShareService.getInstance(context).exportImage(url)
+                            .addOnSuccessListener((Activity) context, new OnSuccessListener<ShareService.Export>() {
                                 @Override
-                                public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
-                                    // Calling the intent to share the bitmap
-                                    Bitmap icon = resource;
-                                    Intent share = new Intent(Intent.ACTION_SEND);
-                                    share.setType("image/jpeg");
-
-                                    ContentValues values = new ContentValues();
-                                    values.put(MediaStore.Images.Media.TITLE, "title");
-                                    values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
-                                    Uri uri = context.getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                                            values);
-
-
-                                    OutputStream outputStream;
-                                    try {
-                                        outputStream = context.getContentResolver().openOutputStream(uri);
-                                        icon.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
-                                        outputStream.close();
-                                    } catch (Exception e) {
-                                        System.err.println(e.toString());
-                                    }
-
-                                    share.putExtra(Intent.EXTRA_STREAM, uri);
-                                    context.startActivity(Intent.createChooser(share, "Share Image"));
+                                public void onSuccess(ShareService.Export export) {
+                                    ShareService.share(context, export);
                                 }
-
+                            })
+                            .addOnFailureListener((Activity) context, new OnFailureListener() {
                                 @Override
-                                public void onLoadCleared(@Nullable Drawable placeholder) {
-
+                                public void onFailure(@NonNull Exception e) {
+                                    Log.e("Error on sharing", e + " ");
+                                    Toast.makeText(context, "Unable to share the image!", Toast.LENGTH_SHORT).show();
                                 }
                             });
-
                 } catch (Exception e) {
                     Log.e("Error on sharing", e + " ");
                     Toast.makeText(context, "App not Installed", Toast.LENGTH_SHORT).show();
@@ -484,7 +527,7 @@ public class ImageOperationsDialog implements ItemHelper.OnCompleteListener{
         b.inputDimensionsRoot.setVisibility(View.GONE);
         b.progressIndicatorRoot.setVisibility(View.VISIBLE);
 
-        new ItemHelper().editCard(imageUrl, context, this);
+        listenTo(ItemHelper.getInstance(context).editCard(imageUrl));
     }
 
 
@@ -494,24 +537,49 @@ public class ImageOperationsDialog implements ItemHelper.OnCompleteListener{
     //ItemHelper Callbacks----------------------------------------------------------------------------------------
 
     /**
-     * onFetched Method from interface onCompleteListener
+     * To show the result of a fetch once it completes
+     * @param task task of the {@link ItemHelper}
+     */
+    private void listenTo(Task<ItemHelper.Result> task) {
+        //Scoped to the activity, the listeners are removed once it stops
+        Activity activity = (Activity) context;
+        task.addOnSuccessListener(activity, new OnSuccessListener<ItemHelper.Result>() {
+            @Override
+            public void onSuccess(ItemHelper.Result result) {
+                //Dialog cancelled meanwhile, e.g. by the activity being destroyed
+                if (!dialog.isShowing()) {
+                    return;
+                }
+                onFetched(result.url, result.colors, result.labels);
+            }
+        }).addOnFailureListener(activity, new OnFailureListener() {
+            @Override
+            public void onFailure(@NonNull Exception e) {
+                if (!dialog.isShowing()) {
+                    return;
+                }
+                onError(e.toString());
+            }
+        });
+    }
+
+    /**
+     * When the image, colors & labels are fetched
      * @param url url of random image
      * @param colors set of colors
      * @param labels list of labels
      */
-    @Override
-    public void onFetched(String url, Set<Integer> colors, List<String> labels) {
+    private void onFetched(String url, Set<Integer> colors, List<String> labels) {
         //Bind Data
         showData(url, colors, labels);
     }
 
 
     /**
-     * onError Method from interface onCompleteListener
+     * When fetching fails
      * @param error error in fetching image/palette colors/labels
      */
-    @Override
-    public void onError(String error) {
+    private void onError(String error) {
         //Notify Error
         dialog.dismiss();
         listener.onError(error);
@@ -527,4 +595,12 @@ public class ImageOperationsDialog implements ItemHelper.OnCompleteListener{
         void onImageAdded(Item item);
         void onError(String error);
     }
+
+    /**
+     * Listener
+     * To pass the images added in batch mode to the gallery activity, a batch at a time.
+     */
+    interface OnBatchListener{
+        void onImagesAdded(List<Item> items);
+    }
 }
@@ -0,0 +1,220 @@
+package com.streamliners.galleryapp.adapters;
+
+import com.streamliners.galleryapp.models.Item;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Index of the colors of the items in the CIE Lab space, where distances match perceived differences
+ *
+ * The Lab space is split into cubic cells & every item is kept in the cell of its color.
+ * A k nearest neighbours query visits the cells in growing shells around the cell of the color
+ * & stops once no unvisited cell can hold a closer color, so it doesn't scan the whole gallery.
+ */
+class ColorIndex {
+
+    //Edge of a cell, in Lab units (a difference of about 2.3 is just noticeable)
+    private static final float CELL_SIZE = 8f;
+
+    //L is in [0, 100], a & b in about [-128, 128]
+    private static final int MAX_SHELL = (int) Math.ceil(256 / CELL_SIZE);
+
+    private final Map<Integer, List<Entry>> cells = new HashMap<>();
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+
+    /**
+     * To index the color of an item
+     * @param item item to be found by its color
+     */
+    synchronized void add(Item item) {
+        Entry entry = new Entry(item.id, item.color);
+        Entry old = entries.put(item.id, entry);
+        if (old != null) {
+            removeFromCell(old);
+        }
+
+        int cell = cellOf(entry.l, entry.a, entry.b);
+        List<Entry> cellEntries = cells.get(cell);
+        if (cellEntries == null) {
+            cellEntries = new ArrayList<>();
+            cells.put(cell, cellEntries);
+        }
+        cellEntries.add(entry);
+    }
+
+    /**
+     * To remove an item from the index
+     * @param item item which was deleted or edited
+     */
+    synchronized void remove(Item item) {
+        Entry entry = entries.remove(item.id);
+        if (entry != null) {
+            removeFromCell(entry);
+        }
+    }
+
+    private void removeFromCell(Entry entry) {
+        int cell = cellOf(entry.l, entry.a, entry.b);
+        List<Entry> cellEntries = cells.get(cell);
+        if (cellEntries != null) {
+            cellEntries.remove(entry);
+            if (cellEntries.isEmpty()) {
+                cells.remove(cell);
+            }
+        }
+    }
+
+    /**
+     * @return number of indexed items
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * To find the items whose color is the closest to the given one
+     * @param color color to be matched
+     * @param k maximum number of items
+     * @return ids of the closest items, closest first
+     */
+    synchronized List<Long> nearest(int color, int k) {
+        Entry query = new Entry(0, color);
+        int cl = cellCoordinate(query.l), ca = cellCoordinate(query.a), cb = cellCoordinate(query.b);
+
+        //Farthest of the best entries found so far on top
+        PriorityQueue<Neighbour> best = new PriorityQueue<>();
+
+        for (int shell = 0; shell <= MAX_SHELL && k > 0; shell++) {
+            //Colors in this shell are at least (shell - 1) cells away from the query
+            if (best.size() == k) {
+                float bound = (shell - 1) * CELL_SIZE;
+                if (bound > 0 && bound * bound > best.peek().distance) {
+                    break;
+                }
+            }
+
+            //Every entry is already a candidate
+            if (best.size() == entries.size()) {
+                break;
+            }
+
+            for (int dl = -shell; dl <= shell; dl++) {
+                for (int da = -shell; da <= shell; da++) {
+                    //Only the surface of the shell, the inside was visited before
+                    boolean onSurface = Math.abs(dl) == shell || Math.abs(da) == shell;
+                    int step = onSurface || shell == 0 ? 1 : 2 * shell;
+                    for (int db = -shell; db <= shell; db += step) {
+                        List<Entry> cellEntries = cells.get(key(cl + dl, ca + da, cb + db));
+                        if (cellEntries == null) {
+                            continue;
+                        }
+                        for (Entry entry : cellEntries) {
+                            float distance = query.distanceTo(entry);
+                            if (best.size() < k) {
+                                best.add(new Neighbour(entry.id, distance));
+                            } else if (distance < best.peek().distance) {
+                                best.poll();
+                                best.add(new Neighbour(entry.id, distance));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Long> ids = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            ids.add(0, best.poll().id);
+        }
+        return ids;
+    }
+
+
+
+
+    //Cells -----------------------------------------------------------------------------------------
+
+    private static int cellOf(float l, float a, float b) {
+        return key(cellCoordinate(l), cellCoordinate(a), cellCoordinate(b));
+    }
+
+    private static int cellCoordinate(float value) {
+        return (int) Math.floor(value / CELL_SIZE);
+    }
+
+    private static int key(int l, int a, int b) {
+        return ((l & 0x3FF) << 20) | ((a & 0x3FF) << 10) | (b & 0x3FF);
+    }
+
+
+
+
+    //Color space -----------------------------------------------------------------------------------
+
+    /**
+     * Color of an item converted to Lab once when it is indexed
+     */
+    private static class Entry {
+
+        final long id;
+        final float l, a, b;
+
+        Entry(long id, int color) {
+            this.id = id;
+
+            //sRGB to linear RGB, channels taken from the ARGB int as Color.red() & co. do
+            double r = linear((color >> 16) & 0xFF), g = linear((color >> 8) & 0xFF), bl = linear(color & 0xFF);
+
+            //Linear RGB to XYZ relative to the D65 white point
+            double x = (0.4124 * r + 0.3576 * g + 0.1805 * bl) / 0.95047;
+            double y = 0.2126 * r + 0.7152 * g + 0.0722 * bl;
+            double z = (0.0193 * r + 0.1192 * g + 0.9505 * bl) / 1.08883;
+
+            double fx = f(x), fy = f(y), fz = f(z);
+            this.l = (float) (116 * fy - 16);
+            this.a = (float) (500 * (fx - fy));
+            this.b = (float) (200 * (fy - fz));
+        }
+
+        private static double linear(int channel) {
+            double c = channel / 255.0;
+            return c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+        }
+
+        private static double f(double t) {
+            return t > 216.0 / 24389 ? Math.cbrt(t) : (24389.0 / 27 * t + 16) / 116;
+        }
+
+        /**
+         * @return squared CIE76 difference between the two colors
+         */
+        float distanceTo(Entry other) {
+            float dl = l - other.l, da = a - other.a, db = b - other.b;
+            return dl * dl + da * da + db * db;
+        }
+    }
+
+    /**
+     * Candidate of a query, ordered farthest first
+     */
+    private static class Neighbour implements Comparable<Neighbour> {
+
+        final long id;
+        final float distance;
+
+        Neighbour(long id, float distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Neighbour o) {
+            return Float.compare(o.distance, distance);
+        }
+    }
+}
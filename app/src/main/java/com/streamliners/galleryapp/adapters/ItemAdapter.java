@@ -1,40 +1,138 @@
 package com.streamliners.galleryapp.adapters;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.ContextMenu;
 import android.view.GestureDetector;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.ListView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
 import com.streamliners.galleryapp.GalleryActivity;
 import com.streamliners.galleryapp.R;
 import com.streamliners.galleryapp.databinding.ItemCardBinding;
+import com.streamliners.galleryapp.helpers.AppExecutors;
 import com.streamliners.galleryapp.models.Item;
+import com.streamliners.galleryapp.store.ChangeTrackingList;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
 
 public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder> implements ItemTouchHelperAdapter{
 
+    private static final String TAG = "ItemAdapter";
+
     private final Context context;
-    private final List<Item> allItems;
+    private final ChangeTrackingList allItems;
+
+    //Cards shown, all the items or a view of them in the order of shownOrder
     private List<Item> visibleItems;
+    private final List<Item> shownItems = new ShownItems();
+
+    //Order of the cards shown, null while all the items are shown in the manual order;
+    //search & similar colors results are kept in shownIds, sorted views are kept by their SortIndex
+    private ItemOrder shownOrder;
+    private ItemIdIndex shownIds;
+
+    //False while the cards are shown in another order than the manual one, which dragging can't change then
+    private boolean isListOrder = true;
+
+    //Indices built in the background on first use, then kept up to date with the list on the main thread
+    private static final int ALL_INDEX = 1, LABEL_INDEX = 1 << 1, COLOR_INDEX = 1 << 2;
+    private int builtIndices, buildingIndices;
+    private final List<IndexRequest> indexRequests = new ArrayList<>();
+    private ItemIdIndex allIndex;
+    private LabelIndex labelIndex;
+    private ColorIndex colorIndex;
+
+    //Appending more items than this rebuilds the search & sort indices in the background instead of decoding the items
+    private static final int MAX_INDEXED_APPEND = 20;
+
+    //Sort modes, every order except the manual one is kept in a SortIndex once used
+    public static final int SORT_MANUAL = 0;
+    public static final int SORT_LABEL = SortIndex.LABEL;
+    public static final int SORT_HUE = SortIndex.HUE;
+    public static final int SORT_DATE_ADDED = SortIndex.DATE_ADDED;
+    private final SortIndex[] sortIndices = new SortIndex[4];
+    private int sortMode = SORT_MANUAL;
+
+    //Index replaced by a rebuilt one while its order is still shown, kept up to date until the diff to the new one
+    private SortIndex replacedSortIndex;
+
+    //Number of cards shown by a similar colors search
+    private static final int SIMILAR_COLORS_COUNT = 30;
+
+    //Search waiting for the typing to pause & search running in the background
+    private static final long SEARCH_DEBOUNCE_MS = 150;
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private Runnable pendingQuery;
+    private Future<?> pendingSearch;
+    private volatile int searchGeneration;
+    private SearchMetrics lastSearchMetrics;
     public String url;
     public int index;
+    public long selectedId;
     public ItemCardBinding itemCardBinding;
     public ItemTouchHelper mItemTouchHelper;
-    public int mode;
-    public List<ItemViewHolder> holderList = new ArrayList<>();
+
+    //Drag mode read by the cards when bound, & only the cards attached to the list are updated when it changes
+    private int mode;
+    private final Set<ItemViewHolder> attachedHolders = new HashSet<>();
+
+    //Cards checked in the multi-select mode, in the order they were checked; tapping a card toggles it while the listener is set
+    private static final Object PAYLOAD_CHECKED = new Object();
+    private final Map<Long, Item> checkedItems = new LinkedHashMap<>();
+    private SelectionListener selectionListener;
+
+    //Incremented on every change of the list, to drop diffs computed on an older version
+    private int version;
+    private int lastSubmitVersion;
+
+    //Versions further apart than this many removed & inserted cards are refreshed without diffing, whatever their length;
+    //DiffUtil takes O(N + D^2) for D changes, & a sort of a long list changes almost every position, so it would take
+    //longer than refreshing the few cards on the screen, which keep their views as the ids are stable
+    private static final int MAX_DIFF_EDITS = 4000;
+
+    //Size of the thumbnail shown while the image of a card is decoded, relative to the card
+    private static final float THUMBNAIL_SIZE_MULTIPLIER = 0.1f;
+
+    //Decode time & bitmap bytes of the images of the cards, memory cache hits excluded
+    private long thumbnailCount, thumbnailDecodeTime, thumbnailBytes;
 
 
 
@@ -42,12 +140,13 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
      * Constructor
      * To initiate the object with
      * @param context context for inflating purpose
-     * @param allItems list of all items(cards)
+     * @param allItems list of all items(cards), for large galleries backed by a paged list decoding items on demand
      */
-    public ItemAdapter(Context context, List<Item> allItems){
+    public ItemAdapter(Context context, ChangeTrackingList allItems){
         this.context = context;
         this.allItems = allItems;
         this.visibleItems = allItems;
+        setHasStableIds(true);
     }
 
 
@@ -94,7 +193,7 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
      * on (e.g. in a click listener), use {@link ItemViewHolder#getBindingAdapterPosition()} which
      * will have the updated adapter position.
      * <p>
-     * Override {@link #ItemAdapter(Context, List)} ViewHolder(ViewHolder, int, List)} instead if Adapter can
+     * Override {@link #ItemAdapter(Context, ChangeTrackingList)} ViewHolder(ViewHolder, int, List)} instead if Adapter can
      * handle efficient partial bind.
      *
      * @param holder   The ViewHolder which should be updated to represent the contents of the
@@ -105,16 +204,211 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
     public void onBindViewHolder(@NonNull ItemAdapter.ItemViewHolder holder, int position) {
         Item item = visibleItems.get(position);
 
-        holderList.add(holder);
+        //Checked before a snapshot of the card is shared
+        holder.itemView.setTag(R.id.card_bound_item, item.id);
+        holder.eventListenerHandler();
+        holder.b.card.setChecked(checkedItems.containsKey(item.id));
         //inflate & bind data in card
         holder.b.title.setText(item.label);
         holder.b.title.setBackgroundColor(item.color);
+        loadThumbnail(item.url, holder.b.imageView);
+    }
+
+    /**
+     * Binds only the checked state of a card when it is toggled, without loading its image again
+     * @param holder   The ViewHolder which should be updated
+     * @param position The position of the item within the adapter's data set.
+     * @param payloads {@link #PAYLOAD_CHECKED} for a toggle, empty for a full bind
+     */
+    @Override
+    public void onBindViewHolder(@NonNull ItemViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_CHECKED)) {
+            holder.b.card.setChecked(checkedItems.containsKey(getItemId(position)));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    /**
+     * To show the image of a card, decoded for the card only
+     * A low resolution thumbnail is shown while the card sized bitmap is decoded. Both are decoded
+     * by powers of 2 into RGB_565 when the image has no alpha. The disk cache keeps the downloaded
+     * original once for both sizes, images of the device are cached at card size instead, so a card
+     * doesn't write a resized copy of every remote image.
+     * @param url url of the image
+     * @param imageView image view of the card, its width is the size decoded
+     */
+    private void loadThumbnail(String url, ImageView imageView) {
+        final long startTime = SystemClock.elapsedRealtime();
+
+        RequestBuilder<Bitmap> thumbnail = Glide.with(context)
+                .asBitmap()
+                .load(url)
+                .sizeMultiplier(THUMBNAIL_SIZE_MULTIPLIER)
+                .format(DecodeFormat.PREFER_RGB_565)
+                .downsample(DownsampleStrategy.AT_MOST)
+                .diskCacheStrategy(DiskCacheStrategy.AUTOMATIC);
+
         Glide.with(context)
                 .asBitmap()
-                .load(item.url)
-                .into(holder.b.imageView);
+                .load(url)
+                .format(DecodeFormat.PREFER_RGB_565)
+                .downsample(DownsampleStrategy.AT_MOST)
+                .diskCacheStrategy(DiskCacheStrategy.AUTOMATIC)
+                .thumbnail(thumbnail)
+                .listener(new RequestListener<Bitmap>() {
+                    @Override
+                    public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<Bitmap> target, boolean isFirstResource) {
+                        return false;
+                    }
+
+                    @Override
+                    public boolean onResourceReady(Bitmap resource, Object model, Target<Bitmap> target, DataSource dataSource, boolean isFirstResource) {
+                        if (dataSource != DataSource.MEMORY_CACHE) {
+                            onThumbnailDecoded(resource, SystemClock.elapsedRealtime() - startTime);
+                        }
+                        return false;
+                    }
+                })
+                .into(imageView);
+    }
+
+    private void onThumbnailDecoded(Bitmap bitmap, long decodeTime) {
+        thumbnailCount++;
+        thumbnailDecodeTime += decodeTime;
+        thumbnailBytes += bitmap.getAllocationByteCount();
+        if (!Log.isLoggable(TAG, Log.DEBUG)) {
+            return;
+        }
+        Log.d(TAG, "Card decoded in " + decodeTime + " ms, " + bitmap.getWidth() + " x " + bitmap.getHeight()
+                + " " + bitmap.getConfig() + ", " + bitmap.getAllocationByteCount() + " bytes; average "
+                + (thumbnailDecodeTime / thumbnailCount) + " ms, " + (thumbnailBytes / thumbnailCount) + " bytes");
+    }
+
+    /**
+     * To track the cards attached to the list, the only ones updated when the drag mode changes
+     * Cards coming back from the view cache aren't bound again, so the mode is applied here too.
+     * @param holder holder of the attached card
+     */
+    @Override
+    public void onViewAttachedToWindow(@NonNull ItemViewHolder holder) {
+        attachedHolders.add(holder);
+        holder.eventListenerHandler();
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(@NonNull ItemViewHolder holder) {
+        attachedHolders.remove(holder);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ItemViewHolder holder) {
+        attachedHolders.remove(holder);
+    }
+
+    /**
+     * To enable or disable drag & drop of the cards
+     * @param mode 1 to drag the cards, 0 for the context menu
+     */
+    public void setMode(int mode) {
+        if (this.mode == mode) {
+            return;
+        }
+        this.mode = mode;
+        for (ItemViewHolder holder : attachedHolders) {
+            holder.eventListenerHandler();
+        }
+    }
+
+    /**
+     * @return number of cards attached to the list, i.e. the cards updated when the drag mode changes
+     */
+    @VisibleForTesting
+    public int getAttachedCardCount() {
+        return attachedHolders.size();
+    }
+
+
+
+
+
+    //Multi-select ----------------------------------------------------------------------------------
+
+    /**
+     * To start selecting cards, with one card checked
+     * @param id id of the first checked item
+     * @param listener to receive the number of checked cards
+     */
+    public void startSelection(long id, SelectionListener listener) {
+        selectionListener = listener;
+        checkedItems.clear();
+        int position = positionOf(id, index);
+        if (position >= 0) {
+            toggleChecked(visibleItems.get(position), position);
+        }
+
+        //Checked items are returned in the manual order once the list is indexed
+        whenIndexed(ALL_INDEX, null);
+    }
+
+    /**
+     * To stop selecting cards, unchecking them
+     */
+    public void stopSelection() {
+        selectionListener = null;
+        checkedItems.clear();
+        notifyItemRangeChanged(0, visibleItems.size(), PAYLOAD_CHECKED);
+    }
+
+    /**
+     * @return true while cards are being selected
+     */
+    public boolean isSelecting() {
+        return selectionListener != null;
+    }
+
+    /**
+     * To check or uncheck a card
+     * @param item item of the card
+     * @param position position of the card
+     */
+    private void toggleChecked(Item item, int position) {
+        if (checkedItems.remove(item.id) == null) {
+            checkedItems.put(item.id, item);
+        }
+        notifyItemChanged(position, PAYLOAD_CHECKED);
+        selectionListener.onSelectionChanged(checkedItems.size());
     }
 
+    /**
+     * @return checked items, in the manual order once the list is indexed, otherwise in the order they were checked
+     */
+    public List<Item> getCheckedItems() {
+        List<Item> checked = new ArrayList<>(checkedItems.values());
+        if (allIndex != null) {
+            final ItemIdIndex index = allIndex;
+            //noinspection Convert2Lambda
+            Collections.sort(checked, new Comparator<Item>() {
+                @Override
+                public int compare(Item o1, Item o2) {
+                    return Integer.compare(index.positionOf(o1.id), index.positionOf(o2.id));
+                }
+            });
+        }
+        return checked;
+    }
+
+    /**
+     * Listener
+     * To receive the number of checked cards.
+     */
+    public interface SelectionListener {
+        void onSelectionChanged(int count);
+    }
+
+
+
+
     /**
      * Returns the number of data items/size to display
      * Returns the total number of items in the data set held by the adapter.
@@ -126,63 +420,768 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
         return visibleItems.size();
     }
 
+    /**
+     * Returns the persistent id of the item at a position
+     * Ids are stable, so RecyclerView keeps the views of cards which only moved.
+     * The id is read without decoding the item.
+     * @param position The position of the item within the adapter's data set.
+     * @return id of the item
+     */
+    @Override
+    public long getItemId(int position) {
+        return shownOrder != null ? shownOrder.idAt(position) : allItems.idAt(position);
+    }
+
+
+
+
+
+    /**
+     * To get the card shown at a position
+     * @param position position in the (possibly filtered) list
+     * @return item of the card
+     */
+    public Item getItem(int position) {
+        return visibleItems.get(position);
+    }
+
+    /**
+     * To find the card of an item
+     * Until the list is indexed, all the ids of the list are compared, without decoding the items.
+     * @param id id of the item
+     * @param hint position where the card is expected, e.g. where it was when it was selected
+     * @return position in the (possibly filtered) list or -1 if it isn't shown
+     */
+    public int positionOf(long id, int hint) {
+        if (hint >= 0 && hint < getItemCount() && getItemId(hint) == id) {
+            return hint;
+        }
+        if (shownOrder != null) {
+            return shownOrder.positionOf(id);
+        }
+        if (allIndex != null) {
+            return allIndex.positionOf(id);
+        }
+
+        whenIndexed(ALL_INDEX, null);
+        for (int position = 0; position < allItems.size(); position++) {
+            if (allItems.idAt(position) == id) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * To diff the order shown from a replaced index to the rebuilt index of its sort mode
+     * @param mode sort mode whose index was rebuilt while its order was shown
+     */
+    private void showRebuiltOrder(final int mode) {
+        if (replacedSortIndex == null || shownOrder != replacedSortIndex) {
+            //Another order was shown meanwhile
+            return;
+        }
 
+        final SortIndex order = sortIndices[mode];
+        dispatchDiff(order.ids(), true, new Runnable() {
+            @Override
+            public void run() {
+                showOrder(order, null, false);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                showRebuiltOrder(mode);
+            }
+        });
+    }
 
+    /**
+     * To show the cards in a given order
+     * @param order order of the cards, null to show all the items in the manual order
+     * @param ids order of search results, which are changed with the cards
+     * @param inListOrder true if the cards are in the manual order, i.e. all the items or search results
+     */
+    private void showOrder(ItemOrder order, ItemIdIndex ids, boolean inListOrder) {
+        shownOrder = order;
+        replacedSortIndex = null;
+        shownIds = ids;
+        visibleItems = order == null ? allItems : shownItems;
+        isListOrder = inListOrder;
+    }
+
+    /**
+     * @return true while the cards are shown in the order of a sort mode
+     */
+    private boolean isSorted() {
+        return shownOrder != null && shownIds == null;
+    }
+
+    /**
+     * Cards shown in the order of {@link #shownOrder}
+     * Only ids are kept in the order, items are read by position from the list of all items,
+     * so a sorted view of a paged list doesn't decode it.
+     */
+    private class ShownItems extends AbstractList<Item> {
+
+        @Override
+        public Item get(int position) {
+            return allItems.get(allIndex.positionOf(shownOrder.idAt(position)));
+        }
+
+        @Override
+        public int size() {
+            return shownOrder.size();
+        }
+    }
+
+
+
+
+    //Changes ---------------------------------------------------------------------------------------
+
+    /**
+     * To show items appended at the end of the list
+     * When a search is active, the filtered list is left as it is.
+     * Only the ids of the items are read for the index of the list. A few items are decoded & added
+     * to the search & sort indices which were built; after a larger append, e.g. a loaded batch,
+     * these are built again in the background & a sorted view is updated once they are.
+     * @param positionStart position of the first appended item
+     * @param itemCount number of appended items
+     */
+    public void onItemsAppended(int positionStart, int itemCount) {
+        version++;
+        if (allIndex != null) {
+            for (int i = positionStart; i < positionStart + itemCount; i++) {
+                allIndex.add(i, allItems.idAt(i));
+            }
+        }
+
+        int itemIndices = builtIndices & ~ALL_INDEX;
+        if (itemIndices != 0 && itemCount > MAX_INDEXED_APPEND) {
+            //Kept up to date until they are replaced, a sorted view is shown from them meanwhile
+            builtIndices &= ~itemIndices;
+            buildIndices(itemIndices & ~buildingIndices);
+        } else if (itemIndices != 0) {
+            for (int i = positionStart; i < positionStart + itemCount; i++) {
+                Item item = allItems.get(i);
+                addToIndices(item);
+                if (isSorted()) {
+                    notifyItemInserted(shownOrder.positionOf(item.id));
+                }
+            }
+        }
+
+        if (shownOrder == null) {
+            notifyItemRangeInserted(positionStart, itemCount);
+        }
+    }
+
+    /**
+     * To remove a card
+     * @param position position in the (possibly filtered) list
+     */
+    public void removeItem(int position) {
+        version++;
+        int allPosition = shownOrder == null ? position : allIndex.positionOf(getItemId(position));
+        if (shownIds != null) {
+            shownIds.remove(position);
+        }
+
+        Item item = allItems.remove(allPosition);
+        if (allIndex != null) {
+            allIndex.remove(allPosition);
+        }
+        removeFromIndices(item);
+        if (checkedItems.remove(item.id) != null && selectionListener != null) {
+            selectionListener.onSelectionChanged(checkedItems.size());
+        }
+        notifyItemRemoved(position);
+    }
+
+    /**
+     * To replace a card after it was edited
+     * The edited item keeps the id of the card.
+     * @param position position in the (possibly filtered) list
+     * @param edited edited item
+     */
+    public void updateItem(int position, Item edited) {
+        version++;
+        int allPosition = shownOrder == null ? position : allIndex.positionOf(getItemId(position));
+        Item old = allItems.get(allPosition);
+        Item item = new Item(old.id, edited.url, edited.color, edited.label);
+
+        allItems.set(allPosition, item);
+        removeFromIndices(old);
+        addToIndices(item);
+        if (checkedItems.containsKey(item.id)) {
+            checkedItems.put(item.id, item);
+        }
+
+        //An edited label or color may move the card in a sorted view
+        if (isSorted()) {
+            int sortedPosition = shownOrder.positionOf(item.id);
+            if (sortedPosition != position) {
+                notifyItemMoved(position, sortedPosition);
+                position = sortedPosition;
+            }
+        }
+        notifyItemChanged(position);
+    }
+
+    /**
+     * To add an item to the search & sort indices which were built
+     * @param item added item or new version of an edited one
+     */
+    private void addToIndices(Item item) {
+        if (labelIndex != null) {
+            labelIndex.add(item);
+        }
+        if (colorIndex != null) {
+            colorIndex.add(item);
+        }
+        for (SortIndex sortIndex : sortIndices) {
+            if (sortIndex != null) {
+                sortIndex.add(item);
+            }
+        }
+        if (replacedSortIndex != null) {
+            replacedSortIndex.add(item);
+        }
+    }
+
+    /**
+     * To remove an item from the search & sort indices which were built
+     * @param item deleted item or older version of an edited one
+     */
+    private void removeFromIndices(Item item) {
+        if (labelIndex != null) {
+            labelIndex.remove(item);
+        }
+        if (colorIndex != null) {
+            colorIndex.remove(item);
+        }
+        for (SortIndex sortIndex : sortIndices) {
+            if (sortIndex != null) {
+                sortIndex.remove(item);
+            }
+        }
+        if (replacedSortIndex != null) {
+            replacedSortIndex.remove(item);
+        }
+    }
+
+
+
+
+    //Indices ---------------------------------------------------------------------------------------
+
+    /**
+     * To get the flag of the index of a sort mode
+     * @param mode sort mode other than {@link #SORT_MANUAL}
+     * @return flag of the index, combined with {@link #ALL_INDEX}, {@link #LABEL_INDEX} & {@link #COLOR_INDEX}
+     */
+    private static int sortIndexFlag(int mode) {
+        return 1 << (2 + mode);
+    }
+
+    /**
+     * To run a request once the indices it needs are built
+     * Missing indices are built in the background & the requests waiting for them run in order,
+     * on the main thread.
+     * @param indices flags of the indices needed
+     * @param request run once the indices are built, null to only build them
+     */
+    private void whenIndexed(int indices, Runnable request) {
+        if ((builtIndices & indices) == indices) {
+            if (request != null) {
+                request.run();
+            }
+            return;
+        }
+        if (request != null) {
+            indexRequests.add(new IndexRequest(indices, request));
+        }
+        buildIndices(indices & ~builtIndices & ~buildingIndices);
+    }
+
+    /**
+     * To build indices from a copy of the list, on a background thread
+     * If the list changes meanwhile, the indices are built again from the changed list.
+     * @param indices flags of the indices to be built
+     */
+    private void buildIndices(final int indices) {
+        if (indices == 0) {
+            return;
+        }
+        buildingIndices |= indices;
+        final long startTime = SystemClock.elapsedRealtime();
+
+        allItems.read(new ChangeTrackingList.Reader() {
+            @Override
+            public void read(List<Item> items, long[] ids, final int changeCount) {
+                final ItemIdIndex builtAllIndex = (indices & ALL_INDEX) != 0 ? new ItemIdIndex(ids) : null;
+                final LabelIndex builtLabelIndex = (indices & LABEL_INDEX) != 0 ? new LabelIndex() : null;
+                final ColorIndex builtColorIndex = (indices & COLOR_INDEX) != 0 ? new ColorIndex() : null;
+                if (builtLabelIndex != null || builtColorIndex != null) {
+                    for (Item item : items) {
+                        if (builtLabelIndex != null) {
+                            builtLabelIndex.add(item);
+                        }
+                        if (builtColorIndex != null) {
+                            builtColorIndex.add(item);
+                        }
+                    }
+                }
+                final SortIndex[] builtSortIndices = new SortIndex[sortIndices.length];
+                for (int mode = SORT_LABEL; mode <= SORT_DATE_ADDED; mode++) {
+                    if ((indices & sortIndexFlag(mode)) != 0) {
+                        builtSortIndices[mode] = new SortIndex(mode, items);
+                    }
+                }
+                Log.d(TAG, "Indices " + indices + " of " + ids.length + " items built in "
+                        + (SystemClock.elapsedRealtime() - startTime) + " ms");
+
+                AppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        buildingIndices &= ~indices;
+                        if (changeCount != allItems.getChangeCount()) {
+                            buildIndices(indices & ~builtIndices & ~buildingIndices);
+                            return;
+                        }
+
+                        if (builtAllIndex != null) {
+                            allIndex = builtAllIndex;
+                        }
+                        if (builtLabelIndex != null) {
+                            labelIndex = builtLabelIndex;
+                        }
+                        if (builtColorIndex != null) {
+                            colorIndex = builtColorIndex;
+                        }
+                        int shownMode = SORT_MANUAL;
+                        for (int mode = SORT_LABEL; mode <= SORT_DATE_ADDED; mode++) {
+                            if (builtSortIndices[mode] == null) {
+                                continue;
+                            }
+                            //Sorted view shown from an index rebuilt after a large append, diffed to the rebuilt
+                            //order below; the shown index is kept up to date until then
+                            if (shownOrder != null && shownOrder == sortIndices[mode]) {
+                                replacedSortIndex = sortIndices[mode];
+                                shownMode = mode;
+                            }
+                            sortIndices[mode] = builtSortIndices[mode];
+                        }
+                        builtIndices |= indices;
+                        runIndexRequests();
+                        if (shownMode != SORT_MANUAL) {
+                            showRebuiltOrder(shownMode);
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void onReadFailed(final Exception e) {
+                AppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        //Built again by the next request needing them
+                        buildingIndices &= ~indices;
+                        Log.e(TAG, "Unable to read the items", e);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * To run the requests whose indices are built, in the order they were made
+     */
+    private void runIndexRequests() {
+        List<Runnable> ready = new ArrayList<>();
+        Iterator<IndexRequest> requests = indexRequests.iterator();
+        while (requests.hasNext()) {
+            IndexRequest request = requests.next();
+            if ((builtIndices & request.indices) == request.indices) {
+                requests.remove();
+                ready.add(request.request);
+            }
+        }
+        for (Runnable request : ready) {
+            request.run();
+        }
+    }
+
+    /**
+     * Request waiting for indices to be built
+     */
+    private static class IndexRequest {
+
+        final int indices;
+        final Runnable request;
+
+        IndexRequest(int indices, Runnable request) {
+            this.indices = indices;
+            this.request = request;
+        }
+    }
 
 
     /**
      * To filter the list
+     * Typing is debounced: the search starts once no key was typed for {@link #SEARCH_DEBOUNCE_MS},
+     * runs on a background thread & is dropped if another key is typed meanwhile.
+     * Clearing the query shows all the items straight away, in the current sort order.
      * @param query for search action
      */
-    public void filter(String query) {
-
-        ((GalleryActivity)context).findViewById(R.id.emptySearchResult).setVisibility(View.GONE);
+    public void filter(final String query) {
+        cancelSearch();
+        final int generation = ++searchGeneration;
+        final long typedAt = SystemClock.elapsedRealtime();
 
-        //No query, show all items
+        //No query, show all items in the current sort order
         if (query.trim().isEmpty()){
-            visibleItems = allItems;
             ((GalleryActivity)context).findViewById(R.id.noItemsTV).setVisibility(View.GONE);
-            notifyDataSetChanged();
+            sortBy(sortMode);
             return;
         }
 
-        //filter & add to visibleCourses
-        query = query.toLowerCase();
-        List<Item> temp = new ArrayList<>();
+        pendingQuery = new Runnable() {
+            @Override
+            public void run() {
+                pendingQuery = null;
+                whenIndexed(ALL_INDEX | LABEL_INDEX, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == searchGeneration) {
+                            startSearch(query, generation, typedAt);
+                        }
+                    }
+                });
+            }
+        };
+        searchHandler.postDelayed(pendingQuery, SEARCH_DEBOUNCE_MS);
+    }
 
-        for (Item item : allItems) {
-            if (item.label.toLowerCase().contains(query))
-                temp.add(item);
+    /**
+     * To drop the search waiting for the debounce delay or running in the background
+     */
+    private void cancelSearch() {
+        if (pendingQuery != null) {
+            searchHandler.removeCallbacks(pendingQuery);
+            pendingQuery = null;
         }
-
-        if(temp.size() == 0){
-            ((GalleryActivity)context).findViewById(R.id.emptySearchResult).setVisibility(View.VISIBLE);
-            ((GalleryActivity)context).findViewById(R.id.noItemsTV).setVisibility(View.GONE);
+        if (pendingSearch != null) {
+            pendingSearch.cancel(false);
+            pendingSearch = null;
         }
+    }
 
-        visibleItems = temp;
+    /**
+     * To look the query up in the label index on a background thread
+     * The matches are put in the order of the list there too, so only their ids reach the main thread.
+     * @param query for search action
+     * @param generation number of the query, a newer query makes the result stale
+     * @param typedAt time at which the query was typed
+     */
+    private void startSearch(final String query, final int generation, final long typedAt) {
+        final SearchMetrics metrics = new SearchMetrics(query);
+        final long submittedAt = SystemClock.elapsedRealtime();
+        final int searchVersion = version;
+        final LabelIndex labels = labelIndex;
+        final ItemIdIndex index = allIndex;
+
+        pendingSearch = AppExecutors.computation().submit(new Runnable() {
+            @Override
+            public void run() {
+                final long startedAt = SystemClock.elapsedRealtime();
+                metrics.queueDelay = startedAt - submittedAt;
+                if (generation != searchGeneration) {
+                    return;
+                }
+
+                final long[] ids = inListOrder(index, labels.search(query));
+                final long searchedAt = SystemClock.elapsedRealtime();
+                metrics.searchTime = searchedAt - startedAt;
+
+                AppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != searchGeneration) {
+                            return;
+                        }
+                        pendingSearch = null;
+                        if (searchVersion != version) {
+                            //The list changed while searching
+                            filter(query);
+                            return;
+                        }
+                        showSearchResults(query, ids, metrics, searchedAt, typedAt);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * To show the items found by a search
+     * @param query for search action
+     * @param ids ids of the matching items, in the order of the list
+     * @param metrics timings of the search, completed once the cards are updated
+     * @param searchedAt time at which the search completed
+     * @param typedAt time at which the query was typed
+     */
+    private void showSearchResults(String query, final long[] ids, final SearchMetrics metrics,
+                                   final long searchedAt, final long typedAt) {
+        ((GalleryActivity)context).findViewById(R.id.emptySearchResult)
+                .setVisibility(ids.length == 0 ? View.VISIBLE : View.GONE);
+        ((GalleryActivity)context).findViewById(R.id.noItemsTV).setVisibility(View.GONE);
 
         //Refresh list
-        notifyDataSetChanged();
+        dispatchDiff(ids, false, new Runnable() {
+            @Override
+            public void run() {
+                ItemIdIndex results = new ItemIdIndex(ids);
+                showOrder(results, results, true);
+
+                long now = SystemClock.elapsedRealtime();
+                metrics.resultCount = ids.length;
+                metrics.dispatchTime = now - searchedAt;
+                metrics.totalTime = now - typedAt;
+                lastSearchMetrics = metrics;
+                Log.d(TAG, metrics.toString());
+            }
+        }, retryFilter(query));
+    }
+
+    /**
+     * To put the items found by the label index back in the order of the list
+     * @param index index of the list
+     * @param ids ids of the matching items
+     * @return ids of the matching items in the order of the list
+     */
+    private static long[] inListOrder(ItemIdIndex index, List<Long> ids) {
+        int[] positions = new int[ids.size()];
+        int count = 0;
+        for (long id : ids) {
+            int position = index.positionOf(id);
+            if (position >= 0) {
+                positions[count++] = position;
+            }
+        }
+        Arrays.sort(positions, 0, count);
+
+        long[] matches = new long[count];
+        for (int i = 0; i < count; i++) {
+            matches[i] = index.idAt(positions[i]);
+        }
+        return matches;
+    }
+
+    /**
+     * @return timings of the last search shown, null if there was none
+     */
+    public SearchMetrics getLastSearchMetrics() {
+        return lastSearchMetrics;
+    }
+
+    private Runnable retryFilter(final String query) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                filter(query);
+            }
+        };
     }
 
 
 
     /**
-     * To sort the list alphabetically
+     * To show the cards whose color is the closest to the given one, closest first
+     * Colors are compared in the Lab space, where distances match perceived differences.
+     * The color index is built in the background on the first use & queried on a background thread.
+     * @param color color to be matched, e.g. the color of the selected card
      */
-    public void sortItemsAlphabetically() {
+    public void showSimilarColors(final int color) {
+        cancelSearch();
+        final int generation = ++searchGeneration;
 
-        //noinspection Convert2Lambda
-        Collections.sort(allItems, new Comparator<Item>() {
+        whenIndexed(ALL_INDEX | COLOR_INDEX, new Runnable() {
             @Override
-            public int compare(Item o1, Item o2) {
-                return o1.label.compareTo(o2.label);
+            public void run() {
+                if (generation != searchGeneration) {
+                    return;
+                }
+                final ColorIndex colors = colorIndex;
+                pendingSearch = AppExecutors.computation().submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        long startTime = SystemClock.elapsedRealtime();
+                        final List<Long> nearest = colors.nearest(color, SIMILAR_COLORS_COUNT);
+                        Log.d(TAG, "Similar colors found in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+
+                        AppExecutors.mainThread().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (generation != searchGeneration) {
+                                    return;
+                                }
+                                pendingSearch = null;
+                                showSimilar(color, nearest);
+                            }
+                        });
+                    }
+                });
             }
         });
+    }
 
-        visibleItems = allItems;
-        notifyDataSetChanged();
+    /**
+     * To show the cards found by a similar colors search
+     * @param color color which was matched
+     * @param nearest ids of the items of the closest colors, closest first
+     */
+    private void showSimilar(final int color, List<Long> nearest) {
+        //Items deleted since the search are left out
+        long[] found = new long[nearest.size()];
+        int count = 0;
+        for (long id : nearest) {
+            if (allIndex.positionOf(id) >= 0) {
+                found[count++] = id;
+            }
+        }
+        final long[] ids = Arrays.copyOf(found, count);
+
+        ((GalleryActivity)context).findViewById(R.id.emptySearchResult)
+                .setVisibility(ids.length == 0 ? View.VISIBLE : View.GONE);
+        dispatchDiff(ids, true, new Runnable() {
+            @Override
+            public void run() {
+                ItemIdIndex similar = new ItemIdIndex(ids);
+                showOrder(similar, similar, false);
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                showSimilarColors(color);
+            }
+        });
+    }
+
+
+
+    /**
+     * To show all the items in the order of a sort mode
+     * The orders are built in the background on first use & then kept up to date as items change,
+     * so switching only costs a diff of the ids. Sorted cards are read from the list by id, it isn't copied.
+     * Sorting only changes what is shown: the manual order, set by drag & drop, is left as it is.
+     * @param mode {@link #SORT_MANUAL}, {@link #SORT_LABEL}, {@link #SORT_HUE} or {@link #SORT_DATE_ADDED}
+     */
+    public void sortBy(final int mode) {
+        cancelSearch();
+        final int generation = ++searchGeneration;
+        sortMode = mode;
+
+        ((GalleryActivity)context).findViewById(R.id.emptySearchResult).setVisibility(View.GONE);
+
+        final Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+                sortBy(mode);
+            }
+        };
+
+        if (mode == SORT_MANUAL) {
+            //Other orders are only shown once the list is indexed
+            if (shownOrder != null) {
+                dispatchDiff(allIndex.ids(), true, new Runnable() {
+                    @Override
+                    public void run() {
+                        showOrder(null, null, true);
+                    }
+                }, retry);
+            }
+            return;
+        }
+
+        whenIndexed(ALL_INDEX | sortIndexFlag(mode), new Runnable() {
+            @Override
+            public void run() {
+                if (generation != searchGeneration) {
+                    return;
+                }
+                final SortIndex order = sortIndices[mode];
+                dispatchDiff(order.ids(), true, new Runnable() {
+                    @Override
+                    public void run() {
+                        showOrder(order, null, false);
+                    }
+                }, retry);
+            }
+        });
+    }
+
+    /**
+     * @return current sort mode
+     */
+    public int getSortMode() {
+        return sortMode;
+    }
+
+
+    /**
+     * To show a new version of the list, notifying only the cards which changed
+     * Only the ids of the cards are compared, on a background thread. If the list is modified meanwhile,
+     * the result is dropped & the search or sort is run again on the modified list.
+     * When one version keeps the order of the other, e.g. a search & clearing it, the ranges of removed
+     * or inserted cards are notified whatever the length. Other lists are diffed whatever their length
+     * unless most of their cards changed places, e.g. a long list sorted anew, which is refreshed as a whole
+     * as diffing it would take longer than rebinding.
+     * Called once the list is indexed.
+     * @param newIds ids of the cards to be shown
+     * @param detectMoves true if cards may have been reordered
+     * @param apply makes the adapter show the new cards, run on the main thread just before notifying
+     * @param retry runs the search or sort which produced the new cards again
+     */
+    private void dispatchDiff(final long[] newIds, final boolean detectMoves, final Runnable apply, final Runnable retry) {
+        final int submitVersion = ++version;
+        lastSubmitVersion = submitVersion;
+        final long[] oldIds = (shownOrder != null ? shownOrder : allIndex).ids();
+
+        AppExecutors.computation().execute(new Runnable() {
+            @Override
+            public void run() {
+                final SubsequenceDiff subsequenceDiff = SubsequenceDiff.calculate(oldIds, newIds);
+                final DiffUtil.DiffResult result = subsequenceDiff == null
+                        && ItemDiffCallback.editDistance(oldIds, newIds) <= MAX_DIFF_EDITS
+                        ? DiffUtil.calculateDiff(new ItemDiffCallback(oldIds, newIds), detectMoves)
+                        : null;
+
+                AppExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (submitVersion != version) {
+                            //Superseded by a later search or sort, or the list changed meanwhile
+                            if (submitVersion == lastSubmitVersion) {
+                                retry.run();
+                            }
+                            return;
+                        }
+
+                        apply.run();
+                        if (subsequenceDiff != null) {
+                            subsequenceDiff.dispatchUpdatesTo(new AdapterListUpdateCallback(ItemAdapter.this));
+                        } else if (result != null) {
+                            result.dispatchUpdatesTo(ItemAdapter.this);
+                        } else {
+                            notifyDataSetChanged();
+                        }
+                    }
+                });
+            }
+        });
     }
 
 
@@ -203,17 +1202,31 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
 
     /**
      * To Move Items For Drag-Drop Functionality
-     * @param fromPosition initial position
-     * @param toPosition final position
+     * Dragging sets the manual order, so it is refused while the cards are sorted or ordered by color.
+     * In search results the card takes the place, in the whole list, of the card it is dropped on.
+     * @param fromPosition initial position in the (possibly filtered) list
+     * @param toPosition final position in the (possibly filtered) list
+     * @return true if the card was moved
      */
     @Override
-    public void onItemMove(int fromPosition, int toPosition) {
+    public boolean onItemMove(int fromPosition, int toPosition) {
+        if (!isListOrder) {
+            return false;
+        }
 
-        Item fromItem=allItems.get(fromPosition);
-        allItems.remove(fromItem);
-        allItems.add(toPosition,fromItem);
-        visibleItems = allItems;
+        version++;
+        int allFromPosition = fromPosition, allToPosition = toPosition;
+        if (shownIds != null) {
+            allFromPosition = allIndex.positionOf(shownIds.idAt(fromPosition));
+            allToPosition = allIndex.positionOf(shownIds.idAt(toPosition));
+            shownIds.move(fromPosition, toPosition);
+        }
+        allItems.add(allToPosition, allItems.remove(allFromPosition));
+        if (allIndex != null) {
+            allIndex.move(allFromPosition, allToPosition);
+        }
         notifyItemMoved(fromPosition, toPosition);
+        return true;
     }
 
     /**
@@ -227,6 +1240,39 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
 
 
 
+    /**
+     * Timings of a search, from the key typed to the cards updated
+     */
+    public static class SearchMetrics {
+
+        public final String query;
+        public int resultCount;
+
+        //Time waiting for a background thread, in ms
+        public long queueDelay;
+
+        //Time looking the query up in the label index, in ms
+        public long searchTime;
+
+        //Time from the lookup to the cards being updated, ordering & diffing included, in ms
+        public long dispatchTime;
+
+        //Time from the key typed to the cards being updated, debounce delay included, in ms
+        public long totalTime;
+
+        SearchMetrics(String query) {
+            this.query = query;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Search \"%s\": %d results, queue %d ms, search %d ms, dispatch %d ms, total %d ms",
+                    query, resultCount, queueDelay, searchTime, dispatchTime, totalTime);
+        }
+    }
+
+
+
 
     /**
      * ViewHolder
@@ -247,6 +1293,19 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
             this.b = b;
             gestureDetector = new GestureDetector(b.getRoot().getContext(), this);
             eventListenerHandler();
+
+            //Tapping a card checks it while cards are being selected
+            View.OnClickListener toggle = new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    int position = getBindingAdapterPosition();
+                    if (isSelecting() && position != RecyclerView.NO_POSITION) {
+                        toggleChecked(visibleItems.get(position), position);
+                    }
+                }
+            };
+            b.imageView.setOnClickListener(toggle);
+            b.title.setOnClickListener(toggle);
         }
 
 
@@ -279,8 +1338,11 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
             menu.add(this.getAbsoluteAdapterPosition(), R.id.editCard,0,"Edit");
             menu.add(this.getAbsoluteAdapterPosition(), R.id.deleteCard,0,"Delete");
             menu.add(this.getAbsoluteAdapterPosition(),R.id.shareCard,0,"Share");
-            url = allItems.get(this.getAbsoluteAdapterPosition()).url;
+            menu.add(this.getAbsoluteAdapterPosition(), R.id.similarColorsCard,0,"Similar Colors");
+            menu.add(this.getAbsoluteAdapterPosition(), R.id.selectCard,0,"Select");
+            url = visibleItems.get(this.getAbsoluteAdapterPosition()).url;
             index = this.getAbsoluteAdapterPosition();
+            selectedId = visibleItems.get(index).id;
             itemCardBinding = b;
         }
 
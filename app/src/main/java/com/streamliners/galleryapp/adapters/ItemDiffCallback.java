@@ -0,0 +1,81 @@
+package com.streamliners.galleryapp.adapters;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares two versions of the list of cards
+ * Used by {@link ItemAdapter} to notify only the cards which were inserted, removed or moved.
+ * Cards are compared by the ids of their items, so neither version is decoded; edited cards
+ * are notified as they are edited, so a card with the same id has the same content.
+ */
+public class ItemDiffCallback extends DiffUtil.Callback {
+
+    private final long[] oldIds;
+    private final long[] newIds;
+
+    /**
+     * Constructor
+     * @param oldIds ids of the cards currently shown
+     * @param newIds ids of the cards to be shown
+     */
+    public ItemDiffCallback(long[] oldIds, long[] newIds) {
+        this.oldIds = oldIds;
+        this.newIds = newIds;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return oldIds.length;
+    }
+
+    @Override
+    public int getNewListSize() {
+        return newIds.length;
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return oldIds[oldItemPosition] == newIds[newItemPosition];
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        return true;
+    }
+
+    /**
+     * To count the cards removed & inserted between two versions of the list, a move counting as both
+     * As the ids are unique, the cards kept in place are the longest increasing run of their
+     * new positions taken in the old order, found in O(N log N) whatever the number of changes.
+     * @param oldIds ids of the cards currently shown
+     * @param newIds ids of the cards to be shown
+     * @return edit distance D that {@link DiffUtil} takes O(N + D^2) to diff
+     */
+    static int editDistance(long[] oldIds, long[] newIds) {
+        Map<Long, Integer> newPositions = new HashMap<>(newIds.length * 2);
+        for (int i = 0; i < newIds.length; i++) {
+            newPositions.put(newIds[i], i);
+        }
+
+        //Smallest new position ending a kept run of every length
+        int[] tails = new int[Math.min(oldIds.length, newIds.length)];
+        int kept = 0;
+        for (long id : oldIds) {
+            Integer position = newPositions.get(id);
+            if (position == null) {
+                continue;
+            }
+            int index = Arrays.binarySearch(tails, 0, kept, position);
+            index = index < 0 ? -1 - index : index;
+            tails[index] = position;
+            if (index == kept) {
+                kept++;
+            }
+        }
+        return oldIds.length + newIds.length - 2 * kept;
+    }
+}
@@ -0,0 +1,230 @@
+package com.streamliners.galleryapp.adapters;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index from the id of an item to its position in a list of items, & back
+ *
+ * Every id is kept in a slot, in the order of the list. A removal only empties the slot of its id
+ * & a Fenwick tree counts the occupied slots, so the position of an id is the number of ids in the slots
+ * before its own: appends, removals & lookups cost O(log n) & never read the items. A move reassigns
+ * the slots between its two ends; inserting in the middle, or too many empty slots, packs the slots again.
+ * It is built from the ids of the list, e.g. on a background thread, & then kept up to date.
+ * Thread safe, so it can be read in the background while it is updated on the main thread.
+ */
+class ItemIdIndex implements ItemOrder {
+
+    private static final int MIN_CAPACITY = 16;
+
+    //Id held by every slot, 0 for an empty slot
+    private long[] slots = new long[MIN_CAPACITY];
+    private int slotCount;
+
+    //Fenwick tree over the occupied slots, 1-based
+    private int[] tree = new int[MIN_CAPACITY + 1];
+    private int size;
+
+    private final Map<Long, Integer> slotOf = new HashMap<>();
+
+
+    /**
+     * Constructor
+     * @param ids ids of the list, in order
+     */
+    ItemIdIndex(long[] ids) {
+        pack(ids, ids.length);
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized long idAt(int position) {
+        return slots[select(position)];
+    }
+
+    @Override
+    public synchronized int positionOf(long id) {
+        Integer slot = slotOf.get(id);
+        return slot == null ? -1 : rank(slot);
+    }
+
+    @Override
+    public synchronized long[] ids() {
+        long[] ids = new long[size];
+        int count = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slots[slot] != 0) {
+                ids[count++] = slots[slot];
+            }
+        }
+        return ids;
+    }
+
+
+
+
+    //Updates ---------------------------------------------------------------------------------------
+
+    /**
+     * To index an item replaced at a position
+     * @param position position of the item
+     * @param id id of the new item
+     */
+    synchronized void set(int position, long id) {
+        int slot = select(position);
+        slotOf.remove(slots[slot]);
+        slots[slot] = id;
+        slotOf.put(id, slot);
+    }
+
+    /**
+     * To drop an item removed from the list, shifting the following positions
+     * @param position position the item was removed from
+     */
+    synchronized void remove(int position) {
+        int slot = select(position);
+        slotOf.remove(slots[slot]);
+        slots[slot] = 0;
+        update(slot, -1);
+        size--;
+
+        //Lookups slow down as empty slots pile up
+        if (slotCount > MIN_CAPACITY && size < slotCount / 2) {
+            pack(ids(), size);
+        }
+    }
+
+    /**
+     * To update the positions between the two ends of a move
+     * Only the slots of these positions are reassigned, the others are left as they are.
+     * @param fromPosition initial position
+     * @param toPosition final position
+     */
+    synchronized void move(int fromPosition, int toPosition) {
+        if (fromPosition == toPosition) {
+            return;
+        }
+        int step = fromPosition < toPosition ? 1 : -1;
+        int slot = select(fromPosition);
+        long moved = slots[slot];
+        for (int position = fromPosition; position != toPosition; position += step) {
+            int next = select(position + step);
+            slots[slot] = slots[next];
+            slotOf.put(slots[slot], slot);
+            slot = next;
+        }
+        slots[slot] = moved;
+        slotOf.put(moved, slot);
+    }
+
+    /**
+     * To index an item inserted at a position
+     * Appending only takes a new slot, inserting before the end packs the slots.
+     * @param position position of the item
+     * @param id id of the item
+     */
+    synchronized void add(int position, long id) {
+        if (position < size) {
+            long[] ids = new long[size + 1];
+            long[] current = ids();
+            System.arraycopy(current, 0, ids, 0, position);
+            ids[position] = id;
+            System.arraycopy(current, position, ids, position + 1, size - position);
+            pack(ids, ids.length);
+            return;
+        }
+
+        if (slotCount == slots.length) {
+            if (size < slotCount / 2) {
+                pack(ids(), size);
+            } else {
+                slots = Arrays.copyOf(slots, slots.length * 2);
+                buildTree();
+            }
+        }
+        slots[slotCount] = id;
+        slotOf.put(id, slotCount);
+        update(slotCount, 1);
+        slotCount++;
+        size++;
+    }
+
+
+
+
+    //Slots -----------------------------------------------------------------------------------------
+
+    /**
+     * To put the ids in consecutive slots, dropping the empty ones
+     * @param ids ids of the list, in order
+     * @param count number of ids
+     */
+    private void pack(long[] ids, int count) {
+        slots = new long[Math.max(MIN_CAPACITY, count * 2)];
+        System.arraycopy(ids, 0, slots, 0, count);
+        slotCount = count;
+        size = count;
+
+        slotOf.clear();
+        for (int slot = 0; slot < count; slot++) {
+            slotOf.put(slots[slot], slot);
+        }
+        buildTree();
+    }
+
+    /**
+     * To count the occupied slots in O(n), after the slots were reallocated
+     */
+    private void buildTree() {
+        tree = new int[slots.length + 1];
+        for (int i = 1; i <= slots.length; i++) {
+            tree[i] += slots[i - 1] != 0 ? 1 : 0;
+            int parent = i + (i & -i);
+            if (parent <= slots.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private void update(int slot, int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @param slot occupied slot
+     * @return position of the id of the slot, i.e. number of occupied slots before it
+     */
+    private int rank(int slot) {
+        int count = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    /**
+     * @param position position in the list
+     * @return slot holding the id at the position
+     */
+    private int select(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+        }
+        int slot = 0, remaining = position + 1;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1) {
+            int next = slot + step;
+            if (next < tree.length && tree[next] < remaining) {
+                slot = next;
+                remaining -= tree[next];
+            }
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,31 @@
+package com.streamliners.galleryapp.adapters;
+
+/**
+ * Ids of the cards in the order they are shown
+ * {@link ItemAdapter} shows sorted views & search results through it, reading the items by id
+ * from the list of all items instead of copying them.
+ */
+interface ItemOrder {
+
+    /**
+     * @return number of cards
+     */
+    int size();
+
+    /**
+     * @param position position of a card
+     * @return id of the item of the card
+     */
+    long idAt(int position);
+
+    /**
+     * @param id id of an item
+     * @return position of its card or -1 if it isn't shown
+     */
+    int positionOf(long id);
+
+    /**
+     * @return ids of the items, in order
+     */
+    long[] ids();
+}
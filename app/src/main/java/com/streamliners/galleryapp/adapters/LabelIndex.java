@@ -0,0 +1,125 @@
+package com.streamliners.galleryapp.adapters;
+
+import com.streamliners.galleryapp.models.Item;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Search index over the labels of the items
+ *
+ * Labels are lowercased once when an item is indexed & the ids of the items are kept per label.
+ * Every label is also split into trigrams, so a query of 3 or more characters only checks
+ * the labels sharing its rarest trigram instead of every item of the gallery.
+ * Galleries repeat a few labels many times, so a search costs about the number of
+ * distinct labels plus the number of matches.
+ */
+class LabelIndex {
+
+    private static final int GRAM_LENGTH = 3;
+
+    //Ids of the items of every lowercased label
+    private final Map<String, Set<Long>> idsByKey = new HashMap<>();
+
+    //Lowercased labels containing every trigram
+    private final Map<String, Set<String>> keysByGram = new HashMap<>();
+
+
+    /**
+     * To index an item
+     * @param item item to be found by its label
+     */
+    synchronized void add(Item item) {
+        String key = keyOf(item);
+        Set<Long> ids = idsByKey.get(key);
+        if (ids == null) {
+            ids = new HashSet<>();
+            idsByKey.put(key, ids);
+
+            for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+                String gram = key.substring(i, i + GRAM_LENGTH);
+                Set<String> keys = keysByGram.get(gram);
+                if (keys == null) {
+                    keys = new HashSet<>();
+                    keysByGram.put(gram, keys);
+                }
+                keys.add(key);
+            }
+        }
+        ids.add(item.id);
+    }
+
+    /**
+     * To remove an item from the index
+     * @param item item which was deleted or edited
+     */
+    synchronized void remove(Item item) {
+        String key = keyOf(item);
+        Set<Long> ids = idsByKey.get(key);
+        if (ids == null || !ids.remove(item.id) || !ids.isEmpty()) {
+            return;
+        }
+
+        //Last item of the label
+        idsByKey.remove(key);
+        for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+            String gram = key.substring(i, i + GRAM_LENGTH);
+            Set<String> keys = keysByGram.get(gram);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByGram.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * To find the items whose label contains the query, ignoring case
+     * @param query text typed in the search view
+     * @return ids of the matching items, in no particular order
+     */
+    synchronized List<Long> search(String query) {
+        String lowerCaseQuery = query.toLowerCase();
+
+        List<Long> ids = new ArrayList<>();
+        for (String key : candidateKeys(lowerCaseQuery)) {
+            if (key.contains(lowerCaseQuery)) {
+                ids.addAll(idsByKey.get(key));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * To get the labels which may contain the query
+     * @param query lowercased query
+     * @return labels sharing the rarest trigram of the query, or all labels for short queries
+     */
+    private Set<String> candidateKeys(String query) {
+        if (query.length() < GRAM_LENGTH) {
+            return idsByKey.keySet();
+        }
+
+        Set<String> rarest = null;
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+            Set<String> keys = keysByGram.get(query.substring(i, i + GRAM_LENGTH));
+            if (keys == null) {
+                return Collections.emptySet();
+            }
+            if (rarest == null || keys.size() < rarest.size()) {
+                rarest = keys;
+            }
+        }
+        return rarest;
+    }
+
+    private static String keyOf(Item item) {
+        return item.label == null ? "" : item.label.toLowerCase();
+    }
+}
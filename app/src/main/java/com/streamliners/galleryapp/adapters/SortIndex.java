@@ -0,0 +1,218 @@
+package com.streamliners.galleryapp.adapters;
+
+import android.graphics.Color;
+
+import com.streamliners.galleryapp.models.Item;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Order of the items for one sort mode, kept up to date as items are added, edited & deleted
+ *
+ * The key compared by the mode (collation key of the label, hue of the color or id) is computed once
+ * per item, so keeping the order costs a binary search per change instead of a sort per request.
+ * Ties are broken by id, which makes every key unique & lets an item be found by binary search.
+ * It can be built on a background thread, it is then only used on the main thread.
+ */
+class SortIndex implements ItemOrder {
+
+    static final int LABEL = 1;
+    static final int HUE = 2;
+    static final int DATE_ADDED = 3;
+
+    private final Comparator<SortKey> comparator;
+    private final List<SortKey> order = new ArrayList<>();
+    private final Map<Long, SortKey> keys = new HashMap<>();
+
+    //Labels repeat a lot, their collation keys are computed once & dropped with the last item having them
+    private final Collator collator = Collator.getInstance();
+    private final Map<String, LabelKey> collationKeys = new HashMap<>();
+    private final int mode;
+
+
+    /**
+     * Constructor
+     * @param mode {@link #LABEL}, {@link #HUE} or {@link #DATE_ADDED}
+     * @param items items to be sorted
+     */
+    SortIndex(int mode, List<Item> items) {
+        this.mode = mode;
+        this.comparator = comparatorOf(mode);
+
+        for (Item item : items) {
+            SortKey key = keyOf(item);
+            keys.put(item.id, key);
+            order.add(key);
+        }
+        Collections.sort(order, comparator);
+    }
+
+    @Override
+    public int size() {
+        return order.size();
+    }
+
+    @Override
+    public long idAt(int position) {
+        return order.get(position).id;
+    }
+
+    /**
+     * @return ids of the items in sorted order
+     */
+    @Override
+    public long[] ids() {
+        long[] ids = new long[order.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = order.get(i).id;
+        }
+        return ids;
+    }
+
+    /**
+     * To insert an item at its sorted position
+     * @param item added or edited item
+     */
+    void add(Item item) {
+        SortKey key = keyOf(item);
+        SortKey old = keys.put(item.id, key);
+        if (old != null) {
+            order.remove(Collections.binarySearch(order, old, comparator));
+            release(old);
+        }
+        order.add(-Collections.binarySearch(order, key, comparator) - 1, key);
+    }
+
+    /**
+     * To remove an item
+     * @param item deleted item or older version of an edited one
+     */
+    void remove(Item item) {
+        SortKey key = keys.remove(item.id);
+        if (key != null) {
+            order.remove(Collections.binarySearch(order, key, comparator));
+            release(key);
+        }
+    }
+
+    /**
+     * @param id id of an indexed item
+     * @return sorted position of the item or -1 if it isn't indexed
+     */
+    @Override
+    public int positionOf(long id) {
+        SortKey key = keys.get(id);
+        return key == null ? -1 : Collections.binarySearch(order, key, comparator);
+    }
+
+
+
+
+    //Keys ------------------------------------------------------------------------------------------
+
+    private SortKey keyOf(Item item) {
+        SortKey key = new SortKey(item.id);
+        if (mode == LABEL) {
+            String label = item.label == null ? "" : item.label;
+            LabelKey labelKey = collationKeys.get(label);
+            if (labelKey == null) {
+                labelKey = new LabelKey(collator.getCollationKey(label));
+                collationKeys.put(label, labelKey);
+            }
+            labelKey.count++;
+            key.label = labelKey.key;
+        } else if (mode == HUE) {
+            float[] hsv = new float[3];
+            Color.colorToHSV(item.color, hsv);
+            key.hue = hsv[0];
+        }
+        return key;
+    }
+
+    /**
+     * To drop the collation key of a label once no indexed item has it
+     * @param key key of a removed item
+     */
+    private void release(SortKey key) {
+        if (key.label == null) {
+            return;
+        }
+        String label = key.label.getSourceString();
+        LabelKey labelKey = collationKeys.get(label);
+        if (labelKey != null && --labelKey.count == 0) {
+            collationKeys.remove(label);
+        }
+    }
+
+    /**
+     * @return number of labels whose collation key is kept
+     */
+    int getCachedLabelCount() {
+        return collationKeys.size();
+    }
+
+    private static Comparator<SortKey> comparatorOf(int mode) {
+        switch (mode) {
+            case LABEL:
+                return new Comparator<SortKey>() {
+                    @Override
+                    public int compare(SortKey o1, SortKey o2) {
+                        int result = o1.label.compareTo(o2.label);
+                        return result != 0 ? result : Long.compare(o1.id, o2.id);
+                    }
+                };
+            case HUE:
+                return new Comparator<SortKey>() {
+                    @Override
+                    public int compare(SortKey o1, SortKey o2) {
+                        int result = Float.compare(o1.hue, o2.hue);
+                        return result != 0 ? result : Long.compare(o1.id, o2.id);
+                    }
+                };
+            case DATE_ADDED:
+                //Ids are handed out in increasing order
+                return new Comparator<SortKey>() {
+                    @Override
+                    public int compare(SortKey o1, SortKey o2) {
+                        return Long.compare(o1.id, o2.id);
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("Unknown sort mode " + mode);
+        }
+    }
+
+    /**
+     * Precomputed key of an item
+     */
+    private static class SortKey {
+
+        final long id;
+        CollationKey label;
+        float hue;
+
+        SortKey(long id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * Collation key of a label & number of indexed items having it
+     */
+    private static class LabelKey {
+
+        final CollationKey key;
+        int count;
+
+        LabelKey(CollationKey key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.streamliners.galleryapp.adapters;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Difference between two versions of the list of cards when one keeps some of the cards of the other
+ * in the same order, e.g. search results of all the items or all the items after a search
+ *
+ * It is found in one pass over the ids, so unlike {@link ItemDiffCallback} it doesn't depend on the
+ * number of changes & lists of any length are diffed. The cards are notified as ranges of removed
+ * or inserted cards.
+ */
+class SubsequenceDiff {
+
+    //Ranges of removed cards, then of inserted cards: position & count, positions as they are notified
+    private final List<int[]> removed = new ArrayList<>();
+    private final List<int[]> inserted = new ArrayList<>();
+
+
+    private SubsequenceDiff() {
+    }
+
+    /**
+     * To compare two versions of the list of cards
+     * @param oldIds ids of the cards currently shown
+     * @param newIds ids of the cards to be shown
+     * @return difference or null if neither version is a subsequence of the other
+     */
+    static SubsequenceDiff calculate(long[] oldIds, long[] newIds) {
+        SubsequenceDiff diff = new SubsequenceDiff();
+        if (newIds.length <= oldIds.length && collectRanges(oldIds, newIds, diff.removed, false)) {
+            return diff;
+        }
+        if (oldIds.length < newIds.length && collectRanges(newIds, oldIds, diff.inserted, true)) {
+            return diff;
+        }
+        return null;
+    }
+
+    /**
+     * To find the ranges of the longer list missing from the shorter one
+     * @param longer ids of the longer list
+     * @param shorter ids of the shorter list
+     * @param ranges receives position & count of every range
+     * @param isInsertion true if the ranges are inserted, their cards then shift the following positions
+     * @return true if the shorter list is a subsequence of the longer one
+     */
+    private static boolean collectRanges(long[] longer, long[] shorter, List<int[]> ranges, boolean isInsertion) {
+        int position = 0, matched = 0;
+        int i = 0;
+        while (i < longer.length) {
+            if (matched < shorter.length && longer[i] == shorter[matched]) {
+                matched++;
+                position++;
+                i++;
+                continue;
+            }
+
+            int start = i;
+            while (i < longer.length && (matched == shorter.length || longer[i] != shorter[matched])) {
+                i++;
+            }
+            ranges.add(new int[]{position, i - start});
+            if (isInsertion) {
+                position += i - start;
+            }
+        }
+        return matched == shorter.length;
+    }
+
+    /**
+     * To notify the ranges of removed or inserted cards
+     * @param callback adapter showing the cards
+     */
+    void dispatchUpdatesTo(ListUpdateCallback callback) {
+        for (int[] range : removed) {
+            callback.onRemoved(range[0], range[1]);
+        }
+        for (int[] range : inserted) {
+            callback.onInserted(range[0], range[1]);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * On-disk cache of the palette colors & labels extracted from images, keyed by the url of the image
+ *
+ * Every entry is a small file named after the SHA-1 of the url. The least recently used entries
+ * are deleted once the cache holds more than {@link #MAX_BYTES}; the last modified time of the files
+ * keeps the order of use across restarts.
+ */
+public class AnalysisCache {
+
+    private static final String TAG = "AnalysisCache";
+    private static final String DIR = "analysis";
+    private static final int VERSION = 1;
+    private static final long MAX_BYTES = 512 * 1024;
+
+    private final DiskLruIndex index;
+
+    private long hitCount, missCount;
+
+
+    /**
+     * Constructor
+     * @param cacheDir cache dir of the app
+     */
+    public AnalysisCache(File cacheDir) {
+        this.index = new DiskLruIndex(new File(cacheDir, DIR), MAX_BYTES);
+    }
+
+
+
+
+    //Read ------------------------------------------------------------------------------------------
+
+    /**
+     * To get the analysis of an image
+     * @param url url of the image
+     * @return colors & labels of the image or null if they aren't cached
+     */
+    public synchronized ItemHelper.Result get(String url) {
+        String key = DiskLruIndex.keyOf(url);
+        File file = index.get(key);
+        if (file == null) {
+            missCount++;
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readByte() != VERSION || !in.readUTF().equals(url)) {
+                throw new IOException("Stale entry");
+            }
+
+            Set<Integer> colors = new LinkedHashSet<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                colors.add(in.readInt());
+            }
+            List<String> labels = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                labels.add(in.readUTF());
+            }
+
+            hitCount++;
+            return new ItemHelper.Result(url, colors, labels);
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable entry for " + url, e);
+            index.remove(key);
+            missCount++;
+            return null;
+        }
+    }
+
+
+
+
+    //Write -----------------------------------------------------------------------------------------
+
+    /**
+     * To save the analysis of an image, evicting the least recently used entries if needed
+     * @param result colors & labels of the image
+     */
+    public synchronized void put(ItemHelper.Result result) {
+        String key = DiskLruIndex.keyOf(result.url);
+        File file = new File(index.getDir(), key);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeByte(VERSION);
+            out.writeUTF(result.url);
+            out.writeInt(result.colors.size());
+            for (int color : result.colors) {
+                out.writeInt(color);
+            }
+            out.writeInt(result.labels.size());
+            for (String label : result.labels) {
+                out.writeUTF(label);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to cache analysis of " + result.url, e);
+            index.remove(key);
+            return;
+        }
+        index.put(key);
+    }
+
+
+
+
+    //Metrics ---------------------------------------------------------------------------------------
+
+    /**
+     * @return number of lookups which found the analysis
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of lookups which didn't find the analysis
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return size of the cached entries, in bytes
+     */
+    public synchronized long getSize() {
+        return index.size();
+    }
+}
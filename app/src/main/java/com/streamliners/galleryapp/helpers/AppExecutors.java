@@ -0,0 +1,58 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class AppExecutors {
+
+    private static final ExecutorService DISK_IO = Executors.newSingleThreadExecutor();
+    private static final ExecutorService COMPUTATION = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() - 1));
+    private static final Executor MAIN_THREAD = new MainThreadExecutor();
+
+
+    /**
+     * Executor for disk reads & writes
+     * It is single threaded, so writes are applied in the order they are submitted.
+     * @return disk executor
+     */
+    public static ExecutorService diskIO() {
+        return DISK_IO;
+    }
+
+    /**
+     * Executor for CPU bound work such as diffing lists
+     * @return computation executor
+     */
+    public static ExecutorService computation() {
+        return COMPUTATION;
+    }
+
+    /**
+     * Executor posting to the UI thread
+     * @return main thread executor
+     */
+    public static Executor mainThread() {
+        return MAIN_THREAD;
+    }
+
+
+    /**
+     * Posts runnables on the main looper
+     */
+    private static class MainThreadExecutor implements Executor {
+
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            handler.post(command);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.streamliners.galleryapp.models.Item;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fetches many random images at once, e.g. to seed a demo gallery
+ *
+ * At most {@link #MAX_IN_FLIGHT} images go through the {@link ItemHelper} pipeline at a time.
+ * Every image gets the first color of its palette & its first label, and the items are
+ * handed over in batches so the list is updated once per batch instead of once per image.
+ * Must be started & cancelled on the main thread, where the listener is called.
+ */
+public class BatchFetcher {
+
+    private static final String TAG = "BatchFetcher";
+    private static final int MAX_IN_FLIGHT = 6;
+    private static final int BATCH_SIZE = 10;
+
+    //Label of images which ML Kit couldn't label
+    private static final String DEFAULT_LABEL = "Random";
+
+    private final ItemHelper helper;
+    private final int count, width, height;
+    private final Listener listener;
+
+    private final List<Item> pending = new ArrayList<>();
+    private int started, added, failed;
+    private boolean isCancelled;
+    private long startTime;
+
+
+    /**
+     * Constructor
+     * @param context context of the current state of the application
+     * @param count number of images to fetch
+     * @param width width of the images
+     * @param height height of the images, equal to the width for square images
+     * @param listener to receive the progress & the items
+     */
+    public BatchFetcher(Context context, int count, int width, int height, Listener listener) {
+        this.helper = ItemHelper.getInstance(context);
+        this.count = count;
+        this.width = width;
+        this.height = height;
+        this.listener = listener;
+    }
+
+    /**
+     * To start fetching
+     */
+    public void start() {
+        startTime = SystemClock.elapsedRealtime();
+        while (started < Math.min(count, MAX_IN_FLIGHT)) {
+            fetchNext();
+        }
+    }
+
+    /**
+     * To stop fetching, images already in flight are dropped
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    private void fetchNext() {
+        started++;
+        Task<ItemHelper.Result> task = width == height ? helper.fetchData(width) : helper.fetchData(width, height);
+        task.addOnCompleteListener(new OnCompleteListener<ItemHelper.Result>() {
+            @Override
+            public void onComplete(@NonNull Task<ItemHelper.Result> task) {
+                if (isCancelled) {
+                    return;
+                }
+                onFetched(task);
+            }
+        });
+    }
+
+    /**
+     * To collect a fetched image & start the next one
+     * @param task completed task of the image
+     */
+    private void onFetched(Task<ItemHelper.Result> task) {
+        if (task.isSuccessful() && !task.getResult().colors.isEmpty()) {
+            ItemHelper.Result result = task.getResult();
+            String label = result.labels.isEmpty() ? DEFAULT_LABEL : result.labels.get(0);
+            pending.add(new Item(result.url, result.colors.iterator().next(), label));
+            added++;
+        } else {
+            Log.w(TAG, "Unable to fetch image", task.getException());
+            failed++;
+        }
+
+        boolean isDone = added + failed == count;
+        if (pending.size() >= BATCH_SIZE || (isDone && !pending.isEmpty())) {
+            listener.onItemsFetched(new ArrayList<>(pending));
+            pending.clear();
+        }
+        listener.onProgress(added + failed, count);
+
+        if (isDone) {
+            Log.d(TAG, added + " images fetched in " + (SystemClock.elapsedRealtime() - startTime) + " ms, " + failed + " failed");
+            listener.onComplete(added, failed);
+        } else if (started < count) {
+            fetchNext();
+        }
+    }
+
+
+    /**
+     * Listener
+     * To receive the progress & the fetched items.
+     */
+    public interface Listener {
+        void onItemsFetched(List<Item> items);
+        void onProgress(int done, int total);
+        void onComplete(int added, int failed);
+    }
+}
@@ -0,0 +1,181 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.streamliners.galleryapp.models.Item;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Imports many images picked from the device
+ *
+ * The metadata of every image is read on an executor of its own, so the queries to the providers don't
+ * hold up the writes of the gallery on the disk thread, & the image goes through the {@link ItemHelper}
+ * pipeline, which decodes a downsampled bitmap for the palette & the labels. At most {@link #MAX_IN_FLIGHT}
+ * images are imported at a time & every item is handed over as soon as it is ready, so it can be saved
+ * right away. Must be started & cancelled on the main thread, where the listener is called.
+ */
+public class DeviceImporter {
+
+    private static final String TAG = "DeviceImporter";
+    private static final int MAX_IN_FLIGHT = 4;
+
+    //Reads the metadata of the images in flight, shared by the imports
+    private static final ExecutorService IMPORT = Executors.newFixedThreadPool(MAX_IN_FLIGHT);
+
+    private final ContentResolver resolver;
+    private final ItemHelper helper;
+    private final List<Uri> uris;
+    private final Listener listener;
+
+    private int started, imported, failed;
+    private boolean isCancelled;
+    private long startTime;
+
+
+    /**
+     * Constructor
+     * @param context context of the current state of the application
+     * @param uris content uris of the picked images
+     * @param listener to receive the progress & the items
+     */
+    public DeviceImporter(Context context, List<Uri> uris, Listener listener) {
+        this.resolver = context.getContentResolver();
+        this.helper = ItemHelper.getInstance(context);
+        this.uris = uris;
+        this.listener = listener;
+    }
+
+    /**
+     * To start importing
+     */
+    public void start() {
+        startTime = SystemClock.elapsedRealtime();
+        while (started < Math.min(uris.size(), MAX_IN_FLIGHT)) {
+            importNext();
+        }
+    }
+
+    /**
+     * To stop importing, images already in flight are dropped
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    private void importNext() {
+        final Uri uri = uris.get(started++);
+        final long imageStartTime = SystemClock.elapsedRealtime();
+        final String[] name = new String[1];
+
+        Tasks.call(IMPORT, new Callable<String>() {
+            @Override
+            public String call() {
+                return readMetadata(uri);
+            }
+        }).continueWithTask(new Continuation<String, Task<ItemHelper.Result>>() {
+            @Override
+            public Task<ItemHelper.Result> then(@NonNull Task<String> task) {
+                name[0] = task.getResult();
+                return helper.fetchData(uri.toString());
+            }
+        }).addOnCompleteListener(new OnCompleteListener<ItemHelper.Result>() {
+            @Override
+            public void onComplete(@NonNull Task<ItemHelper.Result> task) {
+                if (isCancelled) {
+                    return;
+                }
+                onImported(task, name[0], SystemClock.elapsedRealtime() - imageStartTime);
+            }
+        });
+    }
+
+    /**
+     * To keep access to an image & read its name
+     * Documents picked with ACTION_OPEN_DOCUMENT stay readable after a restart only if the
+     * permission is persisted; other providers don't offer it, which is fine for them.
+     * @param uri content uri of the image
+     * @return display name of the image, null if it isn't known
+     */
+    private String readMetadata(Uri uri) {
+        try {
+            resolver.takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e) {
+            Log.d(TAG, "No persistable permission for " + uri);
+        }
+
+        String[] columns = {OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+        try (Cursor cursor = resolver.query(uri, columns, null, null, null)) {
+            if (cursor == null || !cursor.moveToFirst()) {
+                return null;
+            }
+            Log.d(TAG, "Importing " + cursor.getString(0) + ", " + cursor.getLong(1) + " bytes");
+            return cursor.getString(0);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to read the metadata of " + uri, e);
+            return null;
+        }
+    }
+
+    /**
+     * To hand an imported image over & start the next one
+     * @param task completed task of the image
+     * @param name display name of the image, used as its label if ML Kit couldn't label it
+     * @param time time taken by the image, in ms
+     */
+    private void onImported(Task<ItemHelper.Result> task, String name, long time) {
+        if (task.isSuccessful() && !task.getResult().colors.isEmpty()) {
+            ItemHelper.Result result = task.getResult();
+            String label = !result.labels.isEmpty() ? result.labels.get(0) : labelOf(name);
+            Log.d(TAG, "Image imported in " + time + " ms");
+            imported++;
+            listener.onItemImported(new Item(result.url, result.colors.iterator().next(), label));
+        } else {
+            Log.w(TAG, "Unable to import image in " + time + " ms", task.getException());
+            failed++;
+        }
+        listener.onProgress(imported + failed, uris.size());
+
+        if (imported + failed == uris.size()) {
+            Log.d(TAG, imported + " images imported in " + (SystemClock.elapsedRealtime() - startTime) + " ms, " + failed + " failed");
+            listener.onComplete(imported, failed);
+        } else if (started < uris.size()) {
+            importNext();
+        }
+    }
+
+    private static String labelOf(String name) {
+        if (name == null) {
+            return "Device";
+        }
+        int extension = name.lastIndexOf('.');
+        return extension > 0 ? name.substring(0, extension) : name;
+    }
+
+
+    /**
+     * Listener
+     * To receive the progress & the imported items.
+     */
+    public interface Listener {
+        void onItemImported(Item item);
+        void onProgress(int done, int total);
+        void onComplete(int imported, int failed);
+    }
+}
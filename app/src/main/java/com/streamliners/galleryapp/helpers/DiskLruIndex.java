@@ -0,0 +1,213 @@
+package com.streamliners.galleryapp.helpers;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Index of the files of a directory used as a cache, in the order they were last used
+ *
+ * The files are listed on first use, ordered by their last modified time, which is bumped on every
+ * use so the order survives restarts. Once the files hold more than the given number of bytes,
+ * the least recently used ones are deleted, except the pinned ones which are still being used,
+ * e.g. by a share in progress. Not thread safe, callers synchronize on the cache.
+ */
+class DiskLruIndex {
+
+    private final File dir;
+    private final long maxBytes;
+
+    //Size of every file, least recently used first
+    private Map<String, Long> entries;
+    private long totalBytes;
+
+    //Number of pins of every pinned file
+    private final Map<String, Integer> pins = new HashMap<>();
+
+
+    /**
+     * Constructor
+     * @param dir directory of the files, created if needed
+     * @param maxBytes size above which files are evicted
+     */
+    DiskLruIndex(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * To list the files on first use, in the order they were last used
+     * Leftovers of writes which didn't complete (".tmp") are deleted.
+     */
+    private void open() {
+        if (entries != null) {
+            return;
+        }
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        //noinspection Convert2Lambda
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o1.lastModified(), o2.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (file.isDirectory()) {
+                continue;
+            }
+            if (file.getName().endsWith(".tmp")) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                continue;
+            }
+            entries.put(file.getName(), file.length());
+            totalBytes += file.length();
+        }
+    }
+
+    /**
+     * @return directory of the files
+     */
+    File getDir() {
+        open();
+        return dir;
+    }
+
+    /**
+     * To look a file up, marking it as the most recently used one
+     * A file missing from the disk (e.g. cleared by the system) is dropped from the index.
+     * @param name name of the file
+     * @return file or null if it isn't in the cache
+     */
+    File get(String name) {
+        open();
+        //get() moves the entry to the end of the order, containsKey() doesn't
+        if (entries.get(name) == null) {
+            return null;
+        }
+
+        File file = new File(dir, name);
+        if (!file.exists()) {
+            remove(name);
+            return null;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * To add a file written in the directory, evicting the least recently used files if needed
+     * The file just added is kept even if it is larger than the cache.
+     * @param name name of the file
+     */
+    void put(String name) {
+        open();
+        File file = new File(dir, name);
+        Long old = entries.put(name, file.length());
+        totalBytes += file.length() - (old == null ? 0 : old);
+
+        //The file just added is the most recently used, so it is reached last
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (entry.getKey().equals(name)) {
+                break;
+            }
+            if (pins.containsKey(entry.getKey())) {
+                continue;
+            }
+            totalBytes -= entry.getValue();
+            eldest.remove();
+            //noinspection ResultOfMethodCallIgnored
+            new File(dir, entry.getKey()).delete();
+        }
+    }
+
+    /**
+     * To delete a file
+     * @param name name of the file
+     */
+    void remove(String name) {
+        open();
+        Long size = entries.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        new File(dir, name).delete();
+    }
+
+    /**
+     * To keep a file from being evicted until it is unpinned
+     * Pins are counted, a file pinned twice must be unpinned twice.
+     * @param name name of the file
+     */
+    void pin(String name) {
+        Integer count = pins.get(name);
+        pins.put(name, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * To let a pinned file be evicted again
+     * @param name name of the file
+     */
+    void unpin(String name) {
+        Integer count = pins.get(name);
+        if (count == null || count == 1) {
+            pins.remove(name);
+        } else {
+            pins.put(name, count - 1);
+        }
+    }
+
+    /**
+     * @return size of the files, in bytes
+     */
+    long size() {
+        open();
+        return totalBytes;
+    }
+
+    /**
+     * To get the name of a file from what it holds
+     * @param parts everything the content depends on
+     * @return SHA-1 of the parts, as hex
+     */
+    static String keyOf(Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    //Separator, so ("ab", "c") & ("a", "bc") differ
+                    digest.update((byte) 0);
+                }
+                digest.update(String.valueOf(parts[i]).getBytes(StandardCharsets.UTF_8));
+            }
+
+            byte[] bytes = digest.digest();
+            StringBuilder key = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
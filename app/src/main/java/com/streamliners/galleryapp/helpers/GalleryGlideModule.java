@@ -0,0 +1,65 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.module.AppGlideModule;
+
+import java.io.InputStream;
+
+/**
+ * Configuration of Glide for the app
+ *
+ * Registers {@link RedirectedUrlLoader} & keeps a handle on the disk cache of Glide,
+ * so the loader can store the images it downloads under their redirected url.
+ */
+@GlideModule
+public class GalleryGlideModule extends AppGlideModule {
+
+    private static DiskCache.Factory diskCacheFactory;
+    private static DiskCache diskCache;
+
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        synchronized (GalleryGlideModule.class) {
+            //Same cache as the default one, built once & shared by Glide & the loader
+            diskCacheFactory = new InternalCacheDiskCacheFactory(context);
+        }
+
+        //noinspection Convert2Lambda
+        builder.setDiskCache(new DiskCache.Factory() {
+            @Override
+            public DiskCache build() {
+                return getDiskCache();
+            }
+        });
+    }
+
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) {
+        registry.prepend(RedirectedUrl.class, InputStream.class, new RedirectedUrlLoader.Factory());
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+
+    /**
+     * @return disk cache of Glide, null before Glide is initialized or if the cache can't be created
+     */
+    static synchronized DiskCache getDiskCache() {
+        if (diskCache == null && diskCacheFactory != null) {
+            diskCache = diskCacheFactory.build();
+        }
+        return diskCache;
+    }
+}
@@ -2,156 +2,238 @@ package com.streamliners.galleryapp.helpers;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import androidx.palette.graphics.Palette;
 
 import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.CustomTarget;
-import com.bumptech.glide.request.transition.Transition;
-import com.google.android.gms.tasks.OnFailureListener;
-import com.google.android.gms.tasks.OnSuccessListener;
-import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.label.ImageLabel;
-import com.google.mlkit.vision.label.ImageLabeler;
-import com.google.mlkit.vision.label.ImageLabeling;
-import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
-
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.request.FutureTarget;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Fetches images & extracts their palette colors & labels
+ *
+ * Every request goes through a pipeline of stages, each with its own bounded thread pool:
+ *   fetch   : download & decode the bitmap, following the redirect of random image urls
+ *             with {@link RedirectedUrlLoader} in the same request
+ *   palette : generate the palette of the bitmap
+ *   label   : label the bitmap with the shared {@link LabelingService}
+ * Palette & label run concurrently on the same decoded bitmap, and many requests can be in flight,
+ * each stage working on a different image. Results are returned as {@link Task}s,
+ * whose listeners are called on the main thread.
+ */
 public class ItemHelper {
 
-    private Context context;
-    private OnCompleteListener listener;
+    private static final String TAG = "ItemHelper";
 
-    private String rectangularImageURL = "https://picsum.photos/%d/%d"
-            , squareImageURL = "https://picsum.photos/%d";
+    private static final String RECTANGULAR_IMAGE_URL = "https://picsum.photos/%d/%d"
+            , SQUARE_IMAGE_URL = "https://picsum.photos/%d";
 
-    private Bitmap bitmap;
-    private Set<Integer> colors;
-    private String redirectedURL;
+    //Network bound, a few downloads overlap well
+    private static final ExecutorService FETCH = Executors.newFixedThreadPool(4);
 
+    //Longest side of the bitmap decoded for the analysis, labeling works on 224 x 224 anyway
+    private static final int ANALYSIS_SIZE = 448;
 
-    // Triggers --------------------------------------------------------------------------------------
+    //Fewer quantized colors are enough for the six swatches used & quantize faster than the default 16
+    private static final int PALETTE_MAX_COLORS = 12;
+
+    private static ItemHelper instance;
+
+    private final Context context;
+    private final AnalysisCache cache;
+
+    //Pixels sampled by the palette, the swatches barely change above the default of 112 x 112
+    private volatile int paletteSamplePixels = 112 * 112;
+
+
+    private ItemHelper(Context context) {
+        this.context = context;
+        this.cache = new AnalysisCache(context.getCacheDir());
+    }
 
     /**
-     * For Rectangular image
-     * @param x width of rectangle
-     * @param y height of rectangle
+     * To get the helper of the app
      * @param context context of the current state of the application
      *                As Glide needs context, hence we defined it
-     * @param listener  for creating asynchronous callback
-     *                  Listeners are used for any type of asynchronous event
-     *                  in order to implement the code to run when an event occurs
+     * @return shared helper
      */
-    public void fetchData(int x, int y, Context context, OnCompleteListener listener) throws IOException {
+    public static synchronized ItemHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new ItemHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
 
-        this.context = context;
-        this.listener = listener;
 
-        //...fetch here & when done,
-        //Call listener.onFetched(image, colors, labels);
 
-        fetchUrl(String.format(rectangularImageURL, x, y));
-    }
 
+    // Triggers --------------------------------------------------------------------------------------
+
+    /**
+     * For Rectangular image
+     * @param x width of rectangle
+     * @param y height of rectangle
+     * @return task completed with the redirected url, colors & labels of the image
+     */
+    public Task<Result> fetchData(int x, int y) {
+        return fetch(String.format(RECTANGULAR_IMAGE_URL, x, y), true, false);
+    }
 
     /**
      * For Square image
      * @param x side of square
-     * @param context context of the current state of the application
-     *                As Glide needs context, hence we defined it
-     * @param listener  for creating asynchronous callback
-     *                  Listeners are used for any type of asynchronous event
-     *                  in order to implement the code to run when an event occurs
+     * @return task completed with the redirected url, colors & labels of the image
      */
-    public void fetchData(int x, Context context, OnCompleteListener listener) throws IOException {
-
-        this.context = context;
-        this.listener = listener;
-
-        //...fetch here & when done,
-        //Call listener.onFetched(image, colors, labels);
-
-        fetchUrl(String.format(squareImageURL, x));
+    public Task<Result> fetchData(int x) {
+        return fetch(String.format(SQUARE_IMAGE_URL, x), true, false);
     }
 
+    /**
+     * For an image whose url is known, e.g. an image of the device
+     * @param url of image
+     * @return task completed with the url, colors & labels of the image
+     */
+    public Task<Result> fetchData(String url) {
+        return fetch(url, false, false);
+    }
 
     /**
-     * Fetch data to edit
+     * To edit card
+     * The colors & labels of a card are usually in the analysis cache; otherwise the image
+     * is already in Glide's cache, so it isn't downloaded again.
      * @param url of image
-     * @param context context of the current state of the application
-     *              As Glide needs context, hence we defined it
-     * @param listener for creating asynchronous callback
-     *                 Listeners are used for any type of asynchronous event
-     *                 in order to implement the code to run when an event occurs
+     * @return task completed with the url, colors & labels of the image
      */
-    public void fetchData(String url,Context context,OnCompleteListener listener ){
-        this.context = context;
-        this.listener = listener;
-        redirectedURL = url;
-        fetchImage(url);
+    public Task<Result> editCard(String url) {
+        return fetch(url, false, true);
     }
 
 
 
 
-    //Fetch URL ----------------------------------------------------------------------------------------
+    // Pipeline --------------------------------------------------------------------------------------
 
-    void fetchUrl(String url) throws IOException {
-        new RedirectURLHelper().fetchRedirectedURL(new RedirectURLHelper.OnCompleteListener() {
-            @Override
-            public void onFetched(String url) {
-                redirectedURL = url;
-                fetchImage(redirectedURL);
-            }
+    /**
+     * To run an image through the stages
+     * @param url url of the image
+     * @param resolveRedirect true for the random image urls, which redirect to the actual image
+     * @param onlyFromCache true to fail instead of downloading the image
+     * @return task completed with the result
+     */
+    private Task<Result> fetch(final String url, final boolean resolveRedirect, final boolean onlyFromCache) {
+        final TaskCompletionSource<Result> source = new TaskCompletionSource<>();
+        final long startTime = SystemClock.elapsedRealtime();
 
+        FETCH.execute(new Runnable() {
             @Override
-            public void onError(String error) {
-                listener.onError(error);
-            }
-        }).execute(url);
-    }
-
-
+            public void run() {
+                try {
+                    //Random image urls redirect to a different image every time, only known images are looked up
+                    if (!resolveRedirect) {
+                        Result cached = cache.get(url);
+                        if (cached != null) {
+                            source.trySetResult(cached);
+                            return;
+                        }
+                    }
 
+                    //The redirect is followed by the same request which downloads the image
+                    RedirectedUrl redirectedUrl = resolveRedirect ? new RedirectedUrl(url) : null;
+
+                    //Decoded with a power of 2 sample size straight from the source, never at full resolution
+                    FutureTarget<Bitmap> target = Glide.with(context)
+                            .asBitmap()
+                            .onlyRetrieveFromCache(onlyFromCache)
+                            //Redirected images are cached by the loader, under their redirected url
+                            .skipMemoryCache(resolveRedirect)
+                            .diskCacheStrategy(resolveRedirect ? DiskCacheStrategy.NONE : DiskCacheStrategy.AUTOMATIC)
+                            .downsample(DownsampleStrategy.AT_MOST)
+                            .load(resolveRedirect ? redirectedUrl : url)
+                            .submit(ANALYSIS_SIZE, ANALYSIS_SIZE);
+                    Bitmap bitmap = target.get();
+
+                    String imageUrl = resolveRedirect ? redirectedUrl.getRedirectedUrl() : url;
+                    analyze(imageUrl, target, bitmap, source, startTime);
+                } catch (Exception e) {
+                    source.trySetException(e);
+                }
+            }
+        });
 
-    // ImageFetcher ----------------------------------------------------------------------------------
+        return source.getTask();
+    }
 
     /**
-     * To Fetch Image
-     * @param url The image is fetched from the Internet using Glide through this url.
+     * To extract the colors & labels of a bitmap concurrently
+     * @param url url of the image
+     * @param target request of the bitmap, cleared once both stages are done
+     * @param bitmap decoded image
+     * @param source completed with the result
+     * @param startTime time at which the request started
      */
-    void fetchImage(String url){
-        Glide.with(context)
-                .asBitmap()
-                .load(url)
-              //.diskCacheStrategy(DiskCacheStrategy.NONE)
-              //.skipMemoryCache(true)
-                .into(new CustomTarget<Bitmap>() {
-                    @Override
-                    public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
-                        bitmap = resource;
-                        extractPaletteFromBitmap();
-                    }
+    private void analyze(final String url, final FutureTarget<Bitmap> target, final Bitmap bitmap,
+                         final TaskCompletionSource<Result> source, final long startTime) {
+        final long fetchedAt = SystemClock.elapsedRealtime();
 
-                    @Override
-                    public void onLoadCleared(@Nullable Drawable placeholder) {
+        final Task<Set<Integer>> colors = Tasks.call(AppExecutors.computation(), new Callable<Set<Integer>>() {
+            @Override
+            public Set<Integer> call() {
+                return extractPaletteFromBitmap(bitmap);
+            }
+        });
 
-                    }
+        final Task<List<String>> labels = LabelingService.getInstance().label(bitmap);
 
+        Tasks.whenAll(colors, labels).addOnCompleteListener(new OnCompleteListener<Void>() {
+            @Override
+            public void onComplete(@NonNull Task<Void> task) {
+                Glide.with(context).clear(target);
+
+                if (!colors.isSuccessful()) {
+                    source.trySetException(colors.getException());
+                    return;
+                }
+                if (!labels.isSuccessful()) {
+                    source.trySetException(labels.getException());
+                    return;
+                }
+
+                long now = SystemClock.elapsedRealtime();
+                Log.d(TAG, "Image analyzed: fetch " + (fetchedAt - startTime) + " ms, palette & labels "
+                        + (now - fetchedAt) + " ms, total " + (now - startTime) + " ms");
+                final Result result = new Result(url, colors.getResult(), labels.getResult());
+                source.trySetResult(result);
+
+                AppExecutors.diskIO().execute(new Runnable() {
                     @Override
-                    public void onLoadFailed(@Nullable Drawable errorDrawable) {
-                        super.onLoadFailed(errorDrawable);
-                        listener.onError("Image Load Failed!");
+                    public void run() {
+                        cache.put(result);
                     }
                 });
+            }
+        });
+    }
+
+    /**
+     * @return cache of the colors & labels of the images, for its hit & miss counters
+     */
+    public AnalysisCache getCache() {
+        return cache;
     }
 
 
@@ -160,32 +242,41 @@ public class ItemHelper {
     // PaletteHelper ---------------------------------------------------------------------------------
 
     /**
-     * To extract palette from bitmap
-     *
+     * To set the number of pixels sampled by the palette
+     * Lower budgets are faster, higher ones pick up smaller areas of color.
+     * @param pixels pixel count budget, the bitmap is scaled down to about this area before quantization
      */
-    private void extractPaletteFromBitmap() {
-
-        Palette.from(bitmap).generate(new Palette.PaletteAsyncListener() {
-            public void onGenerated(Palette p) {
-                // Use generated instance
-                colors = getColorsFromPalette(p);
-
-                labelImage();
-            }
-        });
+    public void setPaletteSampleBudget(int pixels) {
+        paletteSamplePixels = pixels;
     }
 
+    /**
+     * To extract palette from bitmap
+     * @param bitmap decoded image
+     * @return colors of the six swatches
+     */
+    private Set<Integer> extractPaletteFromBitmap(Bitmap bitmap) {
+        long startTime = SystemClock.elapsedRealtime();
+        Palette palette = new Palette.Builder(bitmap)
+                .resizeBitmapArea(paletteSamplePixels)
+                .maximumColorCount(PALETTE_MAX_COLORS)
+                .generate();
+        Log.d(TAG, "Palette of " + bitmap.getWidth() + " x " + bitmap.getHeight() + " bitmap generated in "
+                + (SystemClock.elapsedRealtime() - startTime) + " ms");
+        return getColorsFromPalette(palette);
+    }
 
     /**
      * To get colors from palette
      * @param p palette of colors present in the image
      * @return set of integers which are the colors
      */
-    private Set<Integer> getColorsFromPalette(Palette p) {
+    private static Set<Integer> getColorsFromPalette(Palette p) {
 
         // We have used set as there is no duplicacy in set
         // so we don't have to remove zero
-        colors = new HashSet<>();
+        // Linked to keep the order below, the vibrant color first
+        Set<Integer> colors = new LinkedHashSet<>();
 
         colors.add(p.getVibrantColor(0));
         colors.add(p.getLightVibrantColor(0));
@@ -203,85 +294,27 @@ public class ItemHelper {
 
 
 
-    // LabelFetcher ------------------------------------------------------------------------
-
-    /**
-     * To get labels for the image.
-     */
-    private void labelImage() {
-        //image from bitmap
-        InputImage image = InputImage.fromBitmap(bitmap, 0);
-        ImageLabeler labeler = ImageLabeling.getClient(ImageLabelerOptions.DEFAULT_OPTIONS);
-        labeler.process(image)
-                .addOnSuccessListener(new OnSuccessListener<List<ImageLabel>>() {
-                    @Override
-                    public void onSuccess(List<ImageLabel> labels) {
-                        // Task completed successfully
-                        List<String> strings = new ArrayList<>();
-                        for(ImageLabel label : labels){
-                            strings.add(label.getText());
-                        }
-                        listener.onFetched(redirectedURL, colors, strings);
-                    }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        // Task failed with an exception
-                        listener.onError(e.toString());
-                    }
-                });
-    }
-
-
-
-
-    /**
-     * To edit card
-     * @param url of image
-     * @param context context of the current state of the application
-     *              As Glide needs context, hence we defined it
-     * @param listener for creating asynchronous callback
-     *                 Listeners are used for any type of asynchronous event
-     *                 in order to implement the code to run when an event occurs
-     */
-    public void editCard(String url, Context context, OnCompleteListener listener) {
-        this.context = context;
-        this.redirectedURL = url;
-        this.listener = listener;
-        Glide.with(context)
-                .asBitmap()
-                .onlyRetrieveFromCache(true)
-                .load(url)
-                .into(new CustomTarget<Bitmap>() {
-                    @Override
-                    public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
-                        bitmap = resource;
-                        extractPaletteFromBitmap();
-                    }
-
-                    @Override
-                    public void onLoadCleared(@Nullable Drawable placeholder) {
-
-                    }
-                });
-    }
-
-
-
-
-    // Listener -----------------------------------------------------------------------------
+    // Result -----------------------------------------------------------------------------
 
     /**
-     * Interface taken because interface is a group of related methods with empty bodies and
-     * we have to define the process to be performed using them.
-     *
-     * The fetching of Image, Palette Colors & Labels are 3 asynchronous tasks so each have different callbacks.
-     * Therefore we have to implement listener, which will then call the onFetched method when the data will be completely loaded.
-     * The 3 asyncTasks can't be implemented parallelly so we implement them sequentially, as done above.
+     * Data extracted from an image
      */
-    public interface OnCompleteListener{
-        void onFetched(String redirectedURL, Set<Integer>colors, List<String> labels);
-        void onError(String error);
+    public static class Result {
+
+        public final String url;
+        public final Set<Integer> colors;
+        public final List<String> labels;
+
+        /**
+         * Constructor
+         * @param url url of the image, after redirection
+         * @param colors colors of the palette of the image
+         * @param labels labels given to the image
+         */
+        Result(String url, Set<Integer> colors, List<String> labels) {
+            this.url = url;
+            this.colors = colors;
+            this.labels = labels;
+        }
     }
 }
@@ -51,9 +51,8 @@ public class ItemTouchHelperCallback extends ItemTouchHelper.Callback {
      */
     @Override
     public boolean onMove(@NonNull RecyclerView recyclerView, @NonNull RecyclerView.ViewHolder viewHolder, @NonNull RecyclerView.ViewHolder target) {
-        itemAdapter.onItemMove(viewHolder.getAbsoluteAdapterPosition(),
+        return itemAdapter.onItemMove(viewHolder.getAbsoluteAdapterPosition(),
                 target.getAbsoluteAdapterPosition());
-        return true;
     }
 
     /**
@@ -0,0 +1,252 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.label.ImageLabel;
+import com.google.mlkit.vision.label.ImageLabeler;
+import com.google.mlkit.vision.label.ImageLabeling;
+import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Labels images with a single ML Kit labeler shared by the whole app
+ *
+ * The labeler is created & warmed up when the first user acquires the service & closed
+ * when the last one releases it, so its native resources don't outlive the gallery.
+ * Images aren't labeled while no user holds the service, the labeler isn't created again for them.
+ * Images are queued on a single thread, downscaled to the input size of the model
+ * & labeled one after the other, which is how ML Kit runs them anyway.
+ */
+public class LabelingService {
+
+    private static final String TAG = "LabelingService";
+
+    //The default model works on 224 x 224 images, larger inputs are only downscaled by ML Kit
+    private static final int MODEL_INPUT_SIZE = 224;
+
+    private static final LabelingService INSTANCE = new LabelingService();
+
+    private final ExecutorService queue = Executors.newSingleThreadExecutor();
+    private ImageLabeler labeler;
+    private int users;
+
+    //Latency of the labeling calls & of the first warm-up, i.e. of a cold labeler, in ms
+    private long callCount, totalLatency, firstLatency, lastLatency, coldLatency;
+    private boolean isColdLatencyMeasured;
+
+
+    private LabelingService() {
+    }
+
+    /**
+     * @return labeling service of the app
+     */
+    public static LabelingService getInstance() {
+        return INSTANCE;
+    }
+
+
+
+
+    //Lifecycle -------------------------------------------------------------------------------------
+
+    /**
+     * To start using the service, e.g. when an activity is created
+     * The first user creates the labeler & warms it up on the queue, unless the labeler
+     * of the previous users wasn't closed yet.
+     */
+    public synchronized void acquire() {
+        if (users++ > 0) {
+            return;
+        }
+
+        queue.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (LabelingService.this) {
+                    //Labeler kept across a quick release & acquire, e.g. a rotation, is already warm
+                    if (labeler != null || users == 0) {
+                        return;
+                    }
+                }
+
+                long startTime = SystemClock.elapsedRealtime();
+                Bitmap blank = Bitmap.createBitmap(MODEL_INPUT_SIZE, MODEL_INPUT_SIZE, Bitmap.Config.ARGB_8888);
+                try {
+                    Tasks.await(labeler().process(InputImage.fromBitmap(blank, 0)));
+                    onWarmedUp(SystemClock.elapsedRealtime() - startTime);
+                } catch (Exception e) {
+                    Log.w(TAG, "Unable to warm up the labeler", e);
+                } finally {
+                    blank.recycle();
+                }
+            }
+        });
+    }
+
+    /**
+     * To stop using the service, e.g. when an activity is destroyed
+     * The labeler is closed once the last user releases it & queued images are labeled.
+     */
+    public synchronized void release() {
+        if (users == 0 || --users > 0) {
+            return;
+        }
+
+        queue.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (LabelingService.this) {
+                    if (users == 0 && labeler != null) {
+                        labeler.close();
+                        labeler = null;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return labeler, created if it was closed while the service is used
+     * @throws IllegalStateException if the service was released
+     */
+    private synchronized ImageLabeler labeler() {
+        if (labeler == null) {
+            if (users == 0) {
+                throw new IllegalStateException("Labeling service released");
+            }
+            labeler = ImageLabeling.getClient(ImageLabelerOptions.DEFAULT_OPTIONS);
+        }
+        return labeler;
+    }
+
+
+
+
+    //Labeling --------------------------------------------------------------------------------------
+
+    /**
+     * To label an image
+     * Images queued before the service is released are still labeled.
+     * @param bitmap decoded image, it isn't modified & must not be recycled before the task completes
+     * @return task completed with the labels of the image, most confident first;
+     *         failed with an IllegalStateException if the service isn't acquired
+     */
+    public Task<List<String>> label(final Bitmap bitmap) {
+        synchronized (this) {
+            if (users == 0) {
+                return Tasks.forException(new IllegalStateException("Labeling service released"));
+            }
+        }
+        return Tasks.call(queue, new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws Exception {
+                long startTime = SystemClock.elapsedRealtime();
+                Bitmap input = downscale(bitmap);
+                try {
+                    List<ImageLabel> labels = Tasks.await(labeler().process(InputImage.fromBitmap(input, 0)));
+
+                    List<String> strings = new ArrayList<>();
+                    for (ImageLabel label : labels) {
+                        strings.add(label.getText());
+                    }
+                    onLabeled(SystemClock.elapsedRealtime() - startTime);
+                    return strings;
+                } finally {
+                    if (input != bitmap) {
+                        input.recycle();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * To scale an image down so its shorter side is the input size of the model
+     * @param bitmap decoded image
+     * @return scaled copy, or the image itself if it is small enough
+     */
+    private static Bitmap downscale(Bitmap bitmap) {
+        int shorterSide = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        if (shorterSide <= MODEL_INPUT_SIZE) {
+            return bitmap;
+        }
+
+        float scale = (float) MODEL_INPUT_SIZE / shorterSide;
+        return Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)),
+                true);
+    }
+
+    private synchronized void onWarmedUp(long latency) {
+        if (!isColdLatencyMeasured) {
+            coldLatency = latency;
+            isColdLatencyMeasured = true;
+        }
+        Log.d(TAG, "Labeler created & warmed up in " + latency + " ms");
+    }
+
+    private synchronized void onLabeled(long latency) {
+        callCount++;
+        totalLatency += latency;
+        lastLatency = latency;
+        if (callCount == 1) {
+            //First real image, after the warm-up, logged apart from the following ones
+            firstLatency = latency;
+            Log.d(TAG, "First image labeled in " + latency + " ms, cold labeler took " + coldLatency + " ms");
+            return;
+        }
+        Log.d(TAG, "Image labeled in " + latency + " ms, average " + (totalLatency / callCount) + " ms");
+    }
+
+
+
+
+    //Metrics ---------------------------------------------------------------------------------------
+
+    /**
+     * @return number of images labeled
+     */
+    public synchronized long getCallCount() {
+        return callCount;
+    }
+
+    /**
+     * @return latency of the first warm-up, i.e. of creating the labeler & labeling a first image, in ms
+     */
+    public synchronized long getColdLatency() {
+        return coldLatency;
+    }
+
+    /**
+     * @return latency of the first image labeled after the warm-up, in ms
+     */
+    public synchronized long getFirstLatency() {
+        return firstLatency;
+    }
+
+    /**
+     * @return latency of the last image labeled, in ms
+     */
+    public synchronized long getLastLatency() {
+        return lastLatency;
+    }
+
+    /**
+     * @return average latency of the images labeled, in ms
+     */
+    public synchronized long getAverageLatency() {
+        return callCount == 0 ? 0 : totalLatency / callCount;
+    }
+}
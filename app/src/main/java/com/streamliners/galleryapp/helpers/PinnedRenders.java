@@ -0,0 +1,103 @@
+package com.streamliners.galleryapp.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+/**
+ * Renders of a bulk export run in parallel, each one returning a file pinned in the {@link ShareCache}
+ *
+ * Renders are taken as they complete. Once the export is closed, whether it is written or it failed,
+ * the renders not completed are cancelled & the files of the completed ones are unpinned. A render
+ * running at that time may still complete & pin its file, it unpins the file itself then.
+ * @param <T> result of a render, holding its pinned file
+ */
+class PinnedRenders<T> {
+
+    /**
+     * To let the file of a render be evicted again
+     * @param <T> result of a render
+     */
+    interface Unpinner<T> {
+        void unpin(T result);
+    }
+
+    private final CompletionService<T> completion;
+    private final Unpinner<T> unpinner;
+    private final List<Future<T>> futures = new ArrayList<>();
+
+    //Results of the renders completed before the export was closed, unpinned by the close
+    private final List<T> pinned = new ArrayList<>();
+    private boolean isClosed;
+
+
+    /**
+     * Constructor
+     * @param executor executor running the renders
+     * @param unpinner unpins the file of a render
+     */
+    PinnedRenders(Executor executor, Unpinner<T> unpinner) {
+        this.completion = new ExecutorCompletionService<>(executor);
+        this.unpinner = unpinner;
+    }
+
+    /**
+     * To start a render
+     * Called on the thread of the export.
+     * @param render render returning a pinned file
+     * @return future of the render, returned again by {@link #take()} once completed
+     */
+    Future<T> submit(final Callable<T> render) {
+        Future<T> future = completion.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                T result = render.call();
+                synchronized (PinnedRenders.this) {
+                    if (!isClosed) {
+                        pinned.add(result);
+                        return result;
+                    }
+                }
+                //Export closed meanwhile, nothing else would unpin the file
+                unpinner.unpin(result);
+                throw new CancellationException("Export closed");
+            }
+        });
+        futures.add(future);
+        return future;
+    }
+
+    /**
+     * To wait for the next render to complete
+     * @return future of the render
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    Future<T> take() throws InterruptedException {
+        return completion.take();
+    }
+
+    /**
+     * To end the export, once its files are written or it failed
+     * Renders not completed are cancelled & the files of the completed ones are unpinned.
+     */
+    void close() {
+        List<T> results;
+        synchronized (this) {
+            isClosed = true;
+            results = new ArrayList<>(pinned);
+            pinned.clear();
+        }
+
+        for (Future<T> future : futures) {
+            future.cancel(true);
+        }
+        for (T result : results) {
+            unpinner.unpin(result);
+        }
+    }
+}
@@ -1,92 +1,79 @@
 package com.streamliners.galleryapp.helpers;
 
-import android.os.AsyncTask;
-
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 
-public class RedirectURLHelper extends AsyncTask<String, Void, String> {
-
-    private OnCompleteListener listener;
-    private String redirectedURL;
-
-    /**
-     * Constructor
-     * To fetch the redirected URL.
-     * @param listener : For creating asynchronous callback.
-     * @return same object
-     */
-    public RedirectURLHelper fetchRedirectedURL(OnCompleteListener listener){
-        this.listener = listener;
-        return this;
-    }
-
-
-
-    /**
-     * To get the redirected URL for the specified URL.
-     * Override this method to perform a computation on a background thread.
-     * @param strings : url as string.
-     * @return redirected url.
-     */
-    @Override
-    protected String doInBackground(String... strings) {
-        String url = strings[0];
-        HttpURLConnection connection = null;
-        InputStream inputStream = null;
-
-        try{
-            connection= (HttpURLConnection) new URL(url).openConnection();
-        } catch (IOException e){
-            e.printStackTrace();
-        }
-        try{
-            connection.connect();
-        } catch (IOException e){
-            e.printStackTrace();
-        }
-        try {
-            inputStream=connection.getInputStream();
-        } catch (IOException e){
-            e.printStackTrace();
-        }
+/**
+ * Follows the redirects of a url to the url it finally points to
+ *
+ * Every hop is requested with redirects not followed, so the Location header gives the next hop.
+ * The responses of the hops are closed without disconnecting, so their connections are kept alive
+ * by the pool of {@link HttpURLConnection} for the next hop to the same host.
+ * It is the only place redirects are followed, e.g. by {@link RedirectedUrlLoader}.
+ */
+public class RedirectURLHelper {
 
-        redirectedURL = connection.getURL().toString();
+    static final int MAX_REDIRECTS = 5;
+    private static final int TIMEOUT_MS = 10000;
 
-        try{
-            inputStream.close();
-        } catch (IOException e){
-            e.printStackTrace();
-        }
 
-        return redirectedURL;
+    private RedirectURLHelper() {
     }
 
     /**
-     * Runs on the UI thread after doInBackground Method.
-     * @param s The result of the operation computed by doInBackground Method.
+     * To follow the redirects of a url hop by hop, on the calling thread.
+     * @param url : url as string.
+     * @param method : "GET" to read the body of the final response, "HEAD" to only resolve the url.
+     * @return connection of the final response, its url is the redirected url.
+     *         Its body is to be read or closed by the caller.
+     * @throws IOException if a hop fails or there are too many redirects.
      */
-    @Override
-    protected void onPostExecute(String s) {
-        listener.onFetched(redirectedURL);
+    static HttpURLConnection follow(String url, String method) throws IOException {
+        URL current = new URL(url);
+
+        for (int hop = 0; hop <= MAX_REDIRECTS; hop++) {
+            HttpURLConnection connection = (HttpURLConnection) current.openConnection();
+            connection.setRequestMethod(method);
+            connection.setInstanceFollowRedirects(false);
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+
+            int code = connection.getResponseCode();
+            if (code >= 200 && code < 300) {
+                return connection;
+            }
+
+            release(connection);
+            String location = connection.getHeaderField("Location");
+            if (code < 300 || code >= 400) {
+                throw new IOException("HTTP " + code + " from " + current);
+            }
+            if (location == null) {
+                throw new IOException("Redirect " + code + " without location from " + current);
+            }
+            //Location may be relative to the current hop
+            current = new URL(current, location);
+        }
+        throw new IOException("Too many redirects from " + url);
     }
 
-
     /**
-     * Listener for this asynchronous task.
+     * To hand the connection of a hop back to the pool
+     * Closing the body is enough to keep the connection alive, unlike disconnect() which may close the socket.
+     * @param connection : connection whose response was read.
      */
-    interface OnCompleteListener {
-        /**
-         * when the redirected URL is fetched successfully
-         * @param url the redirected url
-         */
-        void onFetched(String url);
-
-        /**
-         * When error occurs
-         */
-        void onError(String error);
+    private static void release(HttpURLConnection connection) {
+        try {
+            InputStream stream = connection.getResponseCode() >= 400
+                    ? connection.getErrorStream()
+                    : connection.getInputStream();
+            if (stream != null) {
+                stream.close();
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+        }
     }
-}
\ No newline at end of file
+}
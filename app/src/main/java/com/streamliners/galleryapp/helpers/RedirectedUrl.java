@@ -0,0 +1,42 @@
+package com.streamliners.galleryapp.helpers;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Glide model of a url which redirects to the actual image, e.g. a random image url
+ *
+ * The url the image was finally downloaded from is recorded by {@link RedirectedUrlLoader}
+ * while Glide loads it, so the redirect doesn't need a request of its own.
+ * Every instance is a different request, they are never equal to one another.
+ */
+public class RedirectedUrl {
+
+    public final String url;
+    private volatile String redirectedUrl;
+
+
+    /**
+     * Constructor
+     * @param url url which redirects
+     */
+    public RedirectedUrl(String url) {
+        this.url = url;
+    }
+
+    /**
+     * @return url the image was downloaded from, null until it is loaded
+     */
+    public String getRedirectedUrl() {
+        return redirectedUrl;
+    }
+
+    void setRedirectedUrl(String redirectedUrl) {
+        this.redirectedUrl = redirectedUrl;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return url;
+    }
+}
@@ -0,0 +1,185 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+
+/**
+ * Loads a {@link RedirectedUrl} with a single download
+ *
+ * The redirects are followed hop by hop by {@link RedirectURLHelper}, recording the final url in the model,
+ * & the body of the final response is streamed into the disk cache of Glide under that url. The image is then decoded
+ * from the cache, and later loads of the redirected url, e.g. by the cards, don't download it again.
+ */
+public class RedirectedUrlLoader implements ModelLoader<RedirectedUrl, InputStream> {
+
+    private static final String TAG = "RedirectedUrlLoader";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+
+    @Override
+    public LoadData<InputStream> buildLoadData(@NonNull RedirectedUrl model, int width, int height, @NonNull Options options) {
+        //The model isn't equal to any other one, so neither is its key
+        return new LoadData<>(new ObjectKey(model), new Fetcher(model));
+    }
+
+    @Override
+    public boolean handles(@NonNull RedirectedUrl model) {
+        return true;
+    }
+
+
+    /**
+     * Follows the redirects & downloads the image
+     */
+    private static class Fetcher implements DataFetcher<InputStream> {
+
+        private final RedirectedUrl model;
+        private HttpURLConnection connection;
+        private InputStream stream;
+        private long bytesRead = -1;
+        private volatile boolean isCancelled;
+
+        Fetcher(RedirectedUrl model) {
+            this.model = model;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super InputStream> callback) {
+            long startTime = SystemClock.elapsedRealtime();
+            try {
+                connection = RedirectURLHelper.follow(model.url, "GET");
+                if (isCancelled) {
+                    callback.onDataReady(null);
+                    return;
+                }
+
+                String current = connection.getURL().toString();
+                model.setRedirectedUrl(current);
+                stream = cache(current, connection.getInputStream());
+                Log.d(TAG, "Downloaded " + current + " from " + model.url + " in "
+                        + (SystemClock.elapsedRealtime() - startTime) + " ms, "
+                        + (bytesRead < 0 ? connection.getContentLength() : bytesRead) + " bytes");
+                callback.onDataReady(stream);
+            } catch (IOException e) {
+                callback.onLoadFailed(e);
+            }
+        }
+
+        /**
+         * To store the body of the response in the disk cache of Glide
+         * @param url url the body is downloaded from
+         * @param body body of the response
+         * @return stream of the cached file, or the body itself if the cache isn't available
+         */
+        private InputStream cache(String url, final InputStream body) throws IOException {
+            DiskCache diskCache = GalleryGlideModule.getDiskCache();
+            if (diskCache == null) {
+                return body;
+            }
+
+            //Disk cache key of a String url loaded by Glide, without signature
+            GlideUrl key = new GlideUrl(url);
+            final IOException[] failure = new IOException[1];
+
+            //noinspection Convert2Lambda
+            diskCache.put(key, new DiskCache.Writer() {
+                @Override
+                public boolean write(@NonNull File file) {
+                    try (OutputStream out = new FileOutputStream(file)) {
+                        byte[] buffer = new byte[BUFFER_SIZE];
+                        long total = 0;
+                        int read;
+                        while ((read = body.read(buffer)) != -1) {
+                            out.write(buffer, 0, read);
+                            total += read;
+                        }
+                        bytesRead = total;
+                        return true;
+                    } catch (IOException e) {
+                        failure[0] = e;
+                        return false;
+                    }
+                }
+            });
+
+            body.close();
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            File file = diskCache.get(key);
+            if (file == null) {
+                throw new IOException("Unable to cache " + url);
+            }
+            return new FileInputStream(file);
+        }
+
+        @Override
+        public void cleanup() {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            isCancelled = true;
+        }
+
+        @NonNull
+        @Override
+        public Class<InputStream> getDataClass() {
+            return InputStream.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.REMOTE;
+        }
+    }
+
+
+    /**
+     * Factory registered in {@link GalleryGlideModule}
+     */
+    public static class Factory implements ModelLoaderFactory<RedirectedUrl, InputStream> {
+
+        @NonNull
+        @Override
+        public ModelLoader<RedirectedUrl, InputStream> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new RedirectedUrlLoader();
+        }
+
+        @Override
+        public void teardown() {
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.core.content.FileProvider;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Cache of the files exported to be shared, in the private cache dir of the app
+ *
+ * Every file is named after the SHA-1 of what it was rendered from (the item or image & the
+ * encoding), so sharing an unchanged card again reuses its file without drawing or encoding it.
+ * Files are shared through the FileProvider of the app ("images/" of the cache dir) & the least
+ * recently used ones are deleted once the cache holds more than {@link #MAX_BYTES}. Files of a bulk
+ * share are pinned until its chooser is launched, so rendering the last cards doesn't evict the first ones.
+ * Archives aren't reused: they are kept apart ("exports/") & deleted once a newer one is written.
+ */
+public class ShareCache {
+
+    private static final String DIR = "images";
+    private static final String EXPORTS_DIR = "exports";
+    private static final String AUTHORITY = "com.streamliners.galleryapp.fileprovider";
+    private static final long MAX_BYTES = 20 * 1024 * 1024;
+
+    private final Context context;
+    private final DiskLruIndex index;
+    private final File exportsDir;
+
+    private long hitCount, missCount;
+
+
+    /**
+     * Constructor
+     * @param context context of the application
+     */
+    public ShareCache(Context context) {
+        this.context = context;
+        this.index = new DiskLruIndex(new File(context.getCacheDir(), DIR), MAX_BYTES);
+        this.exportsDir = new File(context.getCacheDir(), EXPORTS_DIR);
+    }
+
+
+
+
+    //Read ------------------------------------------------------------------------------------------
+
+    /**
+     * To get a file rendered before
+     * @param key what the file is rendered from, see {@link #keyOf(Object...)}
+     * @param extension extension of the file, e.g. "jpg"
+     * @return content uri of the file or null if it isn't cached
+     */
+    public Uri get(String key, String extension) {
+        File file = getFile(key, extension);
+        return file == null ? null : uriOf(file);
+    }
+
+    /**
+     * To get a file rendered before, e.g. to copy it into an archive
+     * @param key what the file is rendered from
+     * @param extension extension of the file
+     * @return file or null if it isn't cached
+     */
+    public File getFile(String key, String extension) {
+        return getFile(key, extension, false);
+    }
+
+    /**
+     * To get a file rendered before
+     * @param key what the file is rendered from
+     * @param extension extension of the file
+     * @param pin true to keep the file until {@link #unpin(File)}
+     * @return file or null if it isn't cached
+     */
+    public synchronized File getFile(String key, String extension, boolean pin) {
+        File file = index.get(key + "." + extension);
+        if (file == null) {
+            missCount++;
+            return null;
+        }
+        if (pin) {
+            index.pin(file.getName());
+        }
+        hitCount++;
+        return file;
+    }
+
+
+
+
+    //Write -----------------------------------------------------------------------------------------
+
+    /**
+     * To get a temporary file to render into, committed with {@link #commit(File, String, String)}
+     * Renders of the same key can run concurrently, each one gets its own file.
+     * @return empty file in the cache dir
+     * @throws IOException if the file can't be created
+     */
+    public File newFile() throws IOException {
+        File dir;
+        synchronized (this) {
+            dir = index.getDir();
+        }
+        return File.createTempFile("share", ".tmp", dir);
+    }
+
+    /**
+     * To add a rendered file, evicting the least recently used files if needed
+     * @param temp file returned by {@link #newFile()}, written completely
+     * @param key what the file is rendered from
+     * @param extension extension of the file
+     * @return file in the cache
+     * @throws IOException if the file can't be moved into the cache
+     */
+    public File commit(File temp, String key, String extension) throws IOException {
+        return commit(temp, key, extension, false);
+    }
+
+    /**
+     * To add a rendered file, evicting the least recently used files if needed
+     * @param temp file returned by {@link #newFile()}, written completely
+     * @param key what the file is rendered from
+     * @param extension extension of the file
+     * @param pin true to keep the file until {@link #unpin(File)}
+     * @return file in the cache
+     * @throws IOException if the file can't be moved into the cache
+     */
+    public synchronized File commit(File temp, String key, String extension, boolean pin) throws IOException {
+        String name = key + "." + extension;
+        File file = new File(index.getDir(), name);
+
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            index.remove(name);
+            throw new IOException("Unable to cache " + name);
+        }
+        if (pin) {
+            //Before put(), which may evict
+            index.pin(name);
+        }
+        index.put(name);
+        return file;
+    }
+
+    /**
+     * To let a pinned file be evicted again, once it is shared
+     * @param file file returned pinned by {@link #getFile(String, String, boolean)}
+     *             or {@link #commit(File, String, String, boolean)}
+     */
+    public synchronized void unpin(File file) {
+        index.unpin(file.getName());
+    }
+
+    /**
+     * To move a written archive out of the cache, deleting the archives written before
+     * The chooser of an older archive was launched long before a new one is requested.
+     * @param temp file returned by {@link #newFile()}, written completely
+     * @param name name of the archive
+     * @return file of the archive
+     * @throws IOException if the file can't be moved
+     */
+    public synchronized File commitExport(File temp, String name) throws IOException {
+        //noinspection ResultOfMethodCallIgnored
+        exportsDir.mkdirs();
+        File[] old = exportsDir.listFiles();
+        if (old != null) {
+            for (File file : old) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+
+        File file = new File(exportsDir, name);
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Unable to export " + name);
+        }
+        return file;
+    }
+
+    /**
+     * @param file file of the cache
+     * @return content uri of the file, readable by the apps it is shared with
+     */
+    public Uri uriOf(File file) {
+        return FileProvider.getUriForFile(context, AUTHORITY, file);
+    }
+
+    /**
+     * To get the key of a render
+     * @param parts everything the render depends on, e.g. url, color, label, size & encoding
+     * @return SHA-1 of the parts, as hex
+     */
+    public static String keyOf(Object... parts) {
+        return DiskLruIndex.keyOf(parts);
+    }
+
+
+
+
+    //Metrics ---------------------------------------------------------------------------------------
+
+    /**
+     * @return number of shares which reused a file
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of shares which rendered a file
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return size of the cached files, in bytes
+     */
+    public synchronized long getSize() {
+        return index.size();
+    }
+}
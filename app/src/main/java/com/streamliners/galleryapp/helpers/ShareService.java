@@ -0,0 +1,655 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.request.FutureTarget;
+import com.google.android.gms.tasks.Continuation;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.streamliners.galleryapp.R;
+import com.streamliners.galleryapp.models.Item;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exports cards & images as files to be shared
+ *
+ * Only the snapshot of a card is drawn on the main thread, into a bitmap taken from the pool of Glide;
+ * decoding, encoding & writing run on the computation executor & the bitmap is returned to the pool.
+ * Files are kept in a {@link ShareCache}, so sharing the same card or image again doesn't encode it.
+ * Callers launch the chooser once the task of the export completes, i.e. once the file is ready.
+ */
+public class ShareService {
+
+    private static final String TAG = "ShareService";
+
+    //Cards rendered at a time by bulk exports, each one holds an image & a card bitmap
+    private static final int MAX_PARALLEL_RENDERS = 3;
+    private static final ExecutorService RENDER = Executors.newFixedThreadPool(MAX_PARALLEL_RENDERS);
+
+    //Writes the archives, waiting for the renders
+    private static final ExecutorService ARCHIVE = Executors.newSingleThreadExecutor();
+
+    //Card layout, as in item_card.xml
+    private static final int MAX_CARD_ASPECT_RATIO = 4;
+    private static final float TITLE_TEXT_SIZE_SP = 20;
+    private static final float TITLE_PADDING_DP = 8;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static ShareService instance;
+
+    private final Context context;
+    private final BitmapPool bitmapPool;
+    private final ShareCache cache;
+
+    private Bitmap.CompressFormat format = Bitmap.CompressFormat.JPEG;
+    private int quality = 85;
+
+
+    private ShareService(Context context) {
+        this.context = context;
+        this.bitmapPool = Glide.get(context).getBitmapPool();
+        this.cache = new ShareCache(context);
+    }
+
+    /**
+     * To get the share service of the app
+     * @param context context of the current state of the application
+     * @return shared service
+     */
+    public static synchronized ShareService getInstance(Context context) {
+        if (instance == null) {
+            instance = new ShareService(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * To set the encoding of the exported files, JPEG 85 by default
+     * @param format JPEG, PNG or WEBP
+     * @param quality 0 - 100, ignored for PNG
+     */
+    public synchronized void setEncoding(Bitmap.CompressFormat format, int quality) {
+        this.format = format;
+        this.quality = quality;
+    }
+
+
+
+
+    //Export ----------------------------------------------------------------------------------------
+
+    /**
+     * To export the snapshot of a card
+     * Must be called on the main thread, where the card is drawn. The cache is checked first, so a card
+     * shared before, with the same content, size & encoding, isn't drawn nor encoded. Otherwise the card
+     * is drawn once it is checked to still show the item at the same size, as it may have been recycled meanwhile.
+     * @param item item shown by the card
+     * @param view root view of the card
+     * @return task completed with the exported file, failed if the card no longer shows the item
+     */
+    public Task<Export> exportCard(final Item item, final View view) {
+        final int width = view.getWidth(), height = view.getHeight();
+        final String[] encoding = encoding();
+        final String key = ShareCache.keyOf("card", item.url, item.color, item.label,
+                width, height, encoding[0], encoding[1]);
+
+        return Tasks.call(AppExecutors.computation(), new Callable<Export>() {
+            @Override
+            public Export call() {
+                return fromCache(key);
+            }
+        }).continueWithTask(AppExecutors.mainThread(), new Continuation<Export, Task<Export>>() {
+            @Override
+            public Task<Export> then(@NonNull Task<Export> task) {
+                if (!task.isSuccessful() || task.getResult() != null) {
+                    return task;
+                }
+                if (!Long.valueOf(item.id).equals(view.getTag(R.id.card_bound_item))
+                        || view.getWidth() != width || view.getHeight() != height) {
+                    return Tasks.forException(new IOException("Card of item " + item.id + " is no longer shown"));
+                }
+
+                final Bitmap snapshot = snapshot(view);
+                return Tasks.call(AppExecutors.computation(), new Callable<Export>() {
+                    @Override
+                    public Export call() throws Exception {
+                        try {
+                            return export(snapshot, key);
+                        } finally {
+                            bitmapPool.put(snapshot);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * To export an image, decoded at its own size
+     * @param url url of the image
+     * @return task completed with the exported file
+     */
+    public Task<Export> exportImage(final String url) {
+        final String[] encoding = encoding();
+        final String key = ShareCache.keyOf("image", url, encoding[0], encoding[1]);
+
+        return Tasks.call(AppExecutors.computation(), new Callable<Export>() {
+            @Override
+            public Export call() throws Exception {
+                Export cached = fromCache(key);
+                if (cached != null) {
+                    return cached;
+                }
+
+                FutureTarget<Bitmap> target = Glide.with(context)
+                        .asBitmap()
+                        .load(url)
+                        .submit();
+                try {
+                    return export(target.get(), key);
+                } finally {
+                    Glide.with(context).clear(target);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return format & quality of the exported files, as part of their cache key
+     */
+    private synchronized String[] encoding() {
+        return new String[]{format.name(), String.valueOf(quality)};
+    }
+
+    /**
+     * To draw a view into a pooled bitmap of its size
+     * @param view view laid out on the screen
+     * @return snapshot of the view
+     */
+    private Bitmap snapshot(View view) {
+        Bitmap bitmap = bitmapPool.get(view.getWidth(), view.getHeight(), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        Drawable background = view.getBackground();
+        if (background != null) {
+            background.draw(canvas);
+        } else {
+            canvas.drawColor(Color.WHITE);
+        }
+        view.draw(canvas);
+        return bitmap;
+    }
+
+    /**
+     * To reuse a file exported before
+     * @param key cache key of the render
+     * @return exported file or null if it isn't cached
+     */
+    private Export fromCache(String key) {
+        return fromCache(key, false);
+    }
+
+    /**
+     * To reuse a file exported before
+     * @param key cache key of the render
+     * @param pin true to keep the file in the cache until it is released
+     * @return exported file or null if it isn't cached
+     */
+    private Export fromCache(String key, boolean pin) {
+        Bitmap.CompressFormat format;
+        synchronized (this) {
+            format = this.format;
+        }
+        File file = cache.getFile(key, extensionOf(format), pin);
+        if (file == null) {
+            return null;
+        }
+        Log.d(TAG, "Reusing shared file " + key);
+        return new Export(file, cache.uriOf(file), mimeTypeOf(format), 0, -1);
+    }
+
+    /**
+     * To encode a bitmap into the share cache
+     * @param bitmap image to be exported
+     * @param key cache key of the render
+     * @return exported file
+     * @throws IOException if the file can't be created or written
+     */
+    private Export export(Bitmap bitmap, String key) throws IOException {
+        return export(bitmap, key, false);
+    }
+
+    /**
+     * To encode a bitmap into the share cache
+     * @param bitmap image to be exported
+     * @param key cache key of the render
+     * @param pin true to keep the file in the cache until it is released
+     * @return exported file
+     * @throws IOException if the file can't be created or written
+     */
+    private Export export(Bitmap bitmap, String key, boolean pin) throws IOException {
+        Bitmap.CompressFormat format;
+        int quality;
+        synchronized (this) {
+            format = this.format;
+            quality = this.quality;
+        }
+
+        long startTime = SystemClock.elapsedRealtime();
+        File temp = cache.newFile();
+        CountingOutputStream out = new CountingOutputStream(new FileOutputStream(temp));
+        try {
+            if (!bitmap.compress(format, quality, out)) {
+                throw new IOException("Unable to encode the image");
+            }
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw e;
+        } finally {
+            out.close();
+        }
+        File file = cache.commit(temp, key, extensionOf(format), pin);
+
+        Export export = new Export(file, cache.uriOf(file), mimeTypeOf(format),
+                SystemClock.elapsedRealtime() - startTime, out.count);
+        Log.d(TAG, "Exported " + bitmap.getWidth() + " x " + bitmap.getHeight() + " as " + format + " " + quality
+                + " in " + export.encodeTime + " ms, " + export.size + " bytes");
+        return export;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String mimeTypeOf(Bitmap.CompressFormat format) {
+        if (format == Bitmap.CompressFormat.PNG) {
+            return "image/png";
+        }
+        if (format == Bitmap.CompressFormat.WEBP) {
+            return "image/webp";
+        }
+        return "image/jpeg";
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String extensionOf(Bitmap.CompressFormat format) {
+        if (format == Bitmap.CompressFormat.PNG) {
+            return "png";
+        }
+        if (format == Bitmap.CompressFormat.WEBP) {
+            return "webp";
+        }
+        return "jpg";
+    }
+
+    /**
+     * @return cache of the exported files, for its hit & miss counters
+     */
+    public ShareCache getCache() {
+        return cache;
+    }
+
+
+
+
+    //Bulk Export -----------------------------------------------------------------------------------
+
+    /**
+     * To export many cards, rendered in parallel
+     * Cards are drawn from their items, as most of them aren't on the screen. At most
+     * {@link #MAX_PARALLEL_RENDERS} cards are rendered at a time, so only their bitmaps are in memory.
+     * The files stay pinned in the cache until they are passed to {@link #shareAll(Context, List)}.
+     * @param items items of the cards
+     * @param width width of the cards, in px
+     * @return task completed with the exported files, in the order of the items
+     */
+    public Task<List<Export>> exportCards(List<Item> items, final int width) {
+        final long startTime = SystemClock.elapsedRealtime();
+        final BulkMetrics metrics = new BulkMetrics();
+
+        List<Task<Export>> tasks = new ArrayList<>(items.size());
+        for (final Item item : items) {
+            tasks.add(Tasks.call(RENDER, new Callable<Export>() {
+                @Override
+                public Export call() throws Exception {
+                    Export export = exportRenderedCard(item, width);
+                    metrics.onExported();
+                    return export;
+                }
+            }));
+        }
+
+        final int count = items.size();
+        final List<Task<Export>> renders = tasks;
+        return Tasks.<Export>whenAllSuccess(tasks).continueWith(new Continuation<List<Export>, List<Export>>() {
+            @Override
+            public List<Export> then(@NonNull Task<List<Export>> task) throws Exception {
+                metrics.log(count, SystemClock.elapsedRealtime() - startTime);
+                if (!task.isSuccessful()) {
+                    //Nothing is shared, the files rendered so far can be evicted again
+                    for (Task<Export> render : renders) {
+                        if (render.isSuccessful()) {
+                            cache.unpin(render.getResult().file);
+                        }
+                    }
+                    throw task.getException();
+                }
+                return task.getResult();
+            }
+        });
+    }
+
+    /**
+     * To export many cards into a single ZIP archive
+     * Cards are rendered in parallel & every one is appended to the archive as soon as it is encoded,
+     * so neither the bitmaps nor the encoded cards are all held in memory.
+     * @param items items of the cards
+     * @param width width of the cards, in px
+     * @return task completed with the archive
+     */
+    public Task<Export> exportArchive(final List<Item> items, final int width) {
+        return Tasks.call(ARCHIVE, new Callable<Export>() {
+            @Override
+            public Export call() throws Exception {
+                return writeArchive(items, width);
+            }
+        });
+    }
+
+    private Export writeArchive(List<Item> items, int width) throws Exception {
+        long startTime = SystemClock.elapsedRealtime();
+        BulkMetrics metrics = new BulkMetrics();
+
+        PinnedRenders<Export> renders = new PinnedRenders<>(RENDER, new PinnedRenders.Unpinner<Export>() {
+            @Override
+            public void unpin(Export export) {
+                cache.unpin(export.file);
+            }
+        });
+        Map<Future<Export>, Item> itemsOf = new HashMap<>();
+        for (final Item item : items) {
+            Future<Export> future = renders.submit(new Callable<Export>() {
+                @Override
+                public Export call() throws Exception {
+                    return exportRenderedCard(item, width);
+                }
+            });
+            itemsOf.put(future, item);
+        }
+
+        File temp = cache.newFile();
+        CountingOutputStream out = new CountingOutputStream(new FileOutputStream(temp));
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out))) {
+            //Already compressed images, storing them is faster & about as small
+            zip.setLevel(Deflater.NO_COMPRESSION);
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            for (int i = 0; i < items.size(); i++) {
+                Future<Export> future = renders.take();
+                Export export = future.get();
+                Item item = itemsOf.get(future);
+
+                zip.putNextEntry(new ZipEntry(item.id + "_" + fileNameOf(item.label) + "." + extensionOf(export.file.getName())));
+                try (InputStream in = new FileInputStream(export.file)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        zip.write(buffer, 0, read);
+                    }
+                }
+                zip.closeEntry();
+                metrics.onExported();
+            }
+        } catch (Exception e) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw e;
+        } finally {
+            //The cards are in the archive or it failed, they can be evicted again, even the ones rendered later
+            renders.close();
+        }
+
+        //Archives aren't reused, the cards they hold are
+        File file = cache.commitExport(temp, "cards_" + items.size() + ".zip");
+        metrics.log(items.size(), SystemClock.elapsedRealtime() - startTime);
+        return new Export(file, cache.uriOf(file), "application/zip",
+                SystemClock.elapsedRealtime() - startTime, out.count);
+    }
+
+    /**
+     * To render a card from its item & export it, reusing the file of an earlier export
+     * @param item item of the card
+     * @param width width of the card, in px
+     * @return exported file, pinned in the cache until it is released
+     */
+    private Export exportRenderedCard(Item item, int width) throws Exception {
+        String[] encoding = encoding();
+        String key = ShareCache.keyOf("render", item.url, item.color, item.label, width, encoding[0], encoding[1]);
+        Export cached = fromCache(key, true);
+        if (cached != null) {
+            return cached;
+        }
+
+        Bitmap card = renderCard(item, width);
+        try {
+            return export(card, key, true);
+        } finally {
+            bitmapPool.put(card);
+        }
+    }
+
+    /**
+     * To draw a card like the list does: the image fitted to the width & the label on its color below
+     * @param item item of the card
+     * @param width width of the card, in px
+     * @return pooled bitmap of the card, to be put back in the pool
+     */
+    private Bitmap renderCard(Item item, int width) throws Exception {
+        FutureTarget<Bitmap> target = Glide.with(context)
+                .asBitmap()
+                .load(item.url)
+                .fitCenter()
+                .submit(width, width * MAX_CARD_ASPECT_RATIO);
+        try {
+            Bitmap image = target.get();
+
+            float density = context.getResources().getDisplayMetrics().scaledDensity;
+            TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+            paint.setColor(Color.WHITE);
+            paint.setTextSize(TITLE_TEXT_SIZE_SP * density);
+            paint.setTextAlign(Paint.Align.CENTER);
+            Paint.FontMetrics metrics = paint.getFontMetrics();
+            int padding = Math.round(TITLE_PADDING_DP * density);
+            int titleHeight = Math.round(metrics.descent - metrics.ascent) + 2 * padding;
+
+            Bitmap card = bitmapPool.get(image.getWidth(), image.getHeight() + titleHeight, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(card);
+            canvas.drawBitmap(image, 0, 0, null);
+            canvas.clipRect(0, image.getHeight(), card.getWidth(), card.getHeight());
+            canvas.drawColor(item.color);
+
+            String label = item.label == null ? "" : item.label;
+            CharSequence title = TextUtils.ellipsize(label, paint, card.getWidth() - 2 * padding, TextUtils.TruncateAt.END);
+            canvas.drawText(title, 0, title.length(), card.getWidth() / 2f,
+                    image.getHeight() + padding - metrics.ascent, paint);
+            return card;
+        } finally {
+            Glide.with(context).clear(target);
+        }
+    }
+
+    private static String fileNameOf(String label) {
+        String name = label == null ? "" : label.replaceAll("[^A-Za-z0-9_-]+", "_");
+        return name.isEmpty() ? "card" : name;
+    }
+
+    private static String extensionOf(String fileName) {
+        return fileName.substring(fileName.lastIndexOf('.') + 1);
+    }
+
+
+
+
+    //Share -----------------------------------------------------------------------------------------
+
+    /**
+     * To open the chooser for an exported file
+     * @param context context to start the chooser from
+     * @param export exported file
+     */
+    public static void share(Context context, Export export) {
+        Intent share = new Intent(Intent.ACTION_SEND);
+        share.setType(export.mimeType);
+        share.putExtra(Intent.EXTRA_STREAM, export.uri);
+        share.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        context.startActivity(Intent.createChooser(share, "Share Image"));
+    }
+
+    /**
+     * To open the chooser for many exported files, releasing their pins in the cache
+     * @param context context to start the chooser from
+     * @param exports files exported by {@link #exportCards(List, int)}
+     */
+    public static void shareAll(Context context, List<Export> exports) {
+        ArrayList<Uri> uris = new ArrayList<>(exports.size());
+        for (Export export : exports) {
+            uris.add(export.uri);
+        }
+
+        Intent share = new Intent(Intent.ACTION_SEND_MULTIPLE);
+        share.setType(exports.isEmpty() ? "image/*" : exports.get(0).mimeType);
+        share.putParcelableArrayListExtra(Intent.EXTRA_STREAM, uris);
+        share.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        try {
+            context.startActivity(Intent.createChooser(share, "Share Images"));
+        } finally {
+            getInstance(context).release(exports);
+        }
+    }
+
+    /**
+     * To let the files of a bulk export be evicted again, e.g. if they won't be shared
+     * @param exports files exported by {@link #exportCards(List, int)}
+     */
+    public void release(List<Export> exports) {
+        for (Export export : exports) {
+            cache.unpin(export.file);
+        }
+    }
+
+
+    /**
+     * File exported to be shared
+     */
+    public static class Export {
+
+        public final Uri uri;
+        public final String mimeType;
+        final File file;
+
+        //Time encoding & writing the image, in ms, 0 if the file was reused
+        public final long encodeTime;
+
+        //Size of the file, in bytes, -1 if the file was reused
+        public final long size;
+
+        Export(File file, Uri uri, String mimeType, long encodeTime, long size) {
+            this.file = file;
+            this.uri = uri;
+            this.mimeType = mimeType;
+            this.encodeTime = encodeTime;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Throughput & peak memory of a bulk export
+     */
+    private static class BulkMetrics {
+
+        private int exported;
+        private long peakMemory;
+
+        synchronized void onExported() {
+            exported++;
+            Runtime runtime = Runtime.getRuntime();
+            peakMemory = Math.max(peakMemory, runtime.totalMemory() - runtime.freeMemory());
+        }
+
+        synchronized void log(int count, long time) {
+            Log.d(TAG, "Exported " + exported + " of " + count + " cards in " + time + " ms, "
+                    + (time == 0 ? exported : exported * 1000 / time) + " cards/s, peak heap "
+                    + (peakMemory / 1024) + " KB");
+        }
+    }
+
+    /**
+     * Counts the bytes written, for the size of the exported file
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        long count;
+
+        CountingOutputStream(OutputStream out) throws IOException {
+            if (out == null) {
+                throw new IOException("Unable to open the image");
+            }
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
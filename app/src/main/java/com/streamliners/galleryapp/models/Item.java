@@ -1,22 +1,76 @@
 package com.streamliners.galleryapp.models;
 
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class Item {
 
+    //Last id handed out, raised past every id decoded from the store
+    private static final AtomicLong lastId = new AtomicLong();
+
+    public final long id;
     public String url;
     public int color;
     public String label;
 
     /**
      * Constructor
+     * To create a new item with a fresh id
      * @param url : url of random image generated
      * @param color : color selected
      * @param label : label selected
      */
     public Item(String url, int color, String label) {
+        this(lastId.incrementAndGet(), url, color, label);
+    }
+
+    /**
+     * Constructor
+     * To create an item keeping an existing id, e.g. when it is decoded or edited
+     * @param id : persistent id of the item
+     * @param url : url of random image generated
+     * @param color : color selected
+     * @param label : label selected
+     */
+    public Item(long id, String url, int color, String label) {
+        this.id = id;
         this.url = url;
         this.color = color;
         this.label = label;
+        reserveId(id);
     }
 
+    /**
+     * To make sure fresh ids are greater than the given one
+     * Called for the ids found in the store before any of its items is decoded.
+     * @param id : id in use
+     */
+    public static void reserveId(long id) {
+        long last;
+        while ((last = lastId.get()) < id) {
+            if (lastId.compareAndSet(last, id)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return last id handed out, saved so that ids are reserved before the store is opened
+     */
+    public static long getLastId() {
+        return lastId.get();
+    }
+
+    /**
+     * Items are equal if they have the same id, an edited item is equal to its older version
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof Item && ((Item) o).id == id);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (id ^ (id >>> 32));
+    }
 }
@@ -0,0 +1,217 @@
+package com.streamliners.galleryapp.store;
+
+import com.streamliners.galleryapp.helpers.AppExecutors;
+import com.streamliners.galleryapp.models.Item;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * List of items which records every add, edit, move & delete made on it
+ * The recorded changes are flushed to the {@link GalleryStore}, so saving costs
+ * as much as the number of changes instead of the size of the gallery.
+ *
+ * For large galleries it can be backed by a {@link PagedItemList}, which writes the changes
+ * to the store as they are made; only the need to flush them is recorded then.
+ * Every change is counted, so a copy read in the background can be matched with the list it was read from.
+ */
+public class ChangeTrackingList extends AbstractList<Item> {
+
+    private List<Item> items = new ArrayList<>();
+    private List<ItemChange> changes = new ArrayList<>();
+    private boolean isPaged;
+    private boolean isDirty;
+
+    //Number of changes made to the in-memory list, or before the paged list when it is attached
+    private int changeCount;
+
+
+    /**
+     * To fill the list with saved items without recording them as changes
+     * @param saved items loaded from the store
+     */
+    public void load(List<Item> saved) {
+        items.addAll(saved);
+        changeCount++;
+    }
+
+    /**
+     * To back the list by a paged list instead of keeping the items in memory
+     * Items added before are written to the paged list at the positions they were added at.
+     * @param paged paged list of the saved items
+     */
+    public void attach(PagedItemList paged) {
+        for (ItemChange change : changes) {
+            change.applyTo(paged);
+        }
+        changes.clear();
+
+        //Counted from there by the paged list
+        changeCount = changeCount + 1 - paged.getWriteCount();
+        items = paged;
+        isPaged = true;
+        isDirty = true;
+    }
+
+    @Override
+    public Item get(int index) {
+        return items.get(index);
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * To get the id of the item at a position, without decoding it when the list is paged
+     * @param index position of the item
+     * @return id of the item
+     */
+    public long idAt(int index) {
+        return isPaged ? ((PagedItemList) items).idAt(index) : items.get(index).id;
+    }
+
+    /**
+     * @return true if the items are read from the store on demand
+     */
+    public boolean isPaged() {
+        return isPaged;
+    }
+
+    /**
+     * @return number of changes made to the list, loaded batches included
+     */
+    public int getChangeCount() {
+        return isPaged ? changeCount + ((PagedItemList) items).getWriteCount() : changeCount;
+    }
+
+    @Override
+    public Item set(int index, Item item) {
+        Item old = items.set(index, item);
+        record(ItemChange.update(index, item));
+        return old;
+    }
+
+    @Override
+    public void add(int index, Item item) {
+        items.add(index, item);
+        modCount++;
+
+        //A remove immediately followed by the insert of the same item is a move
+        ItemChange last = changes.isEmpty() ? null : changes.get(changes.size() - 1);
+        if (last != null && last.op == ItemChange.DELETE && last.removed == item) {
+            changes.set(changes.size() - 1, ItemChange.move(last.position, index));
+            changeCount++;
+        } else {
+            record(ItemChange.insert(index, item));
+        }
+    }
+
+    @Override
+    public Item remove(int index) {
+        Item removed = items.remove(index);
+        modCount++;
+        ItemChange change = ItemChange.delete(index);
+        change.removed = removed;
+        record(change);
+        return removed;
+    }
+
+    private void record(ItemChange change) {
+        if (isPaged) {
+            isDirty = true;
+        } else {
+            changes.add(change);
+            changeCount++;
+        }
+    }
+
+
+
+
+    //Changes ---------------------------------------------------------------------------------------
+
+    /**
+     * @return true if the list was modified since the last drain
+     */
+    public boolean hasChanges() {
+        return isDirty || !changes.isEmpty();
+    }
+
+    /**
+     * To take the recorded changes
+     * @return changes in the order they were made, the list starts recording afresh;
+     *         empty when paged, as the changes are already in the store & only need flushing
+     */
+    public List<ItemChange> drainChanges() {
+        isDirty = false;
+        List<ItemChange> drained = changes;
+        changes = new ArrayList<>();
+        return drained;
+    }
+
+
+
+
+    //Background reads ------------------------------------------------------------------------------
+
+    /**
+     * To read the whole list on a background thread, e.g. to build an index
+     * An in-memory list is copied first; a paged list is read from the log on the disk thread,
+     * once the changes made so far are written to it.
+     * Must be called on the main thread.
+     * @param reader to receive the copy, on a background thread
+     */
+    public void read(final Reader reader) {
+        if (!isPaged) {
+            final List<Item> copy = new ArrayList<>(items);
+            final int count = changeCount;
+            AppExecutors.computation().execute(new Runnable() {
+                @Override
+                public void run() {
+                    long[] ids = new long[copy.size()];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = copy.get(i).id;
+                    }
+                    reader.read(copy, ids, count);
+                }
+            });
+            return;
+        }
+
+        final PagedItemList paged = (PagedItemList) items;
+        final int base = changeCount;
+        AppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                int writtenCount;
+                try {
+                    writtenCount = paged.flush();
+                } catch (IOException e) {
+                    reader.onReadFailed(e);
+                    return;
+                }
+                reader.read(paged.logView(), paged.logIds(), base + writtenCount);
+            }
+        });
+    }
+
+    /**
+     * Reader
+     * To receive a copy of the list on a background thread.
+     */
+    public interface Reader {
+
+        /**
+         * @param items items of the list, decoded on demand when the list is paged
+         * @param ids ids of the items, in order
+         * @param changeCount value of {@link #getChangeCount()} when the list was in this state
+         */
+        void read(List<Item> items, long[] ids, int changeCount);
+
+        void onReadFailed(Exception e);
+    }
+}
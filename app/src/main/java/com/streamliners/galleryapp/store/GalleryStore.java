@@ -0,0 +1,286 @@
+package com.streamliners.galleryapp.store;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.google.gson.Gson;
+import com.streamliners.galleryapp.Constants;
+import com.streamliners.galleryapp.models.Item;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Repository for the items of the gallery.
+ *
+ * The items are kept in an {@link ItemLog} inside the app's files dir:
+ * insert/update/delete/move operations are appended to it & the item at any position
+ * can be decoded on demand. Once the log holds more overwritten records than items,
+ * it is compacted into a new file holding only the current list.
+ */
+public class GalleryStore {
+
+    private static final String LOG_FILE = "gallery.log";
+    private static final int MIN_COMPACTION_GARBAGE = 64;
+
+    private final File logFile;
+    private final Gson gson = new Gson();
+    private ItemLog log;
+    private PagedItemList paged;
+
+    //Set when a write failed & the log may be out of sync with the list
+    private volatile boolean needsRewrite;
+
+
+    /**
+     * Constructor
+     * @param dir directory in which the store files are kept
+     */
+    public GalleryStore(File dir) {
+        this.logFile = new File(dir, LOG_FILE);
+    }
+
+    /**
+     * To open the store of the app
+     * @param context context of the current state of the application
+     * @return store kept in the app's files dir
+     */
+    public static GalleryStore open(Context context) {
+        return new GalleryStore(context.getFilesDir());
+    }
+
+    /**
+     * To get the log, opening it on first use
+     * Opening replays the whole file, so it should happen off the main thread.
+     * @return opened log
+     * @throws IOException if the log can't be opened
+     */
+    private synchronized ItemLog log() throws IOException {
+        if (log == null) {
+            log = ItemLog.open(logFile);
+        }
+        return log;
+    }
+
+
+
+
+    //Read ------------------------------------------------------------------------------------------
+
+    /**
+     * To load all the items
+     * @return list of items in the saved order
+     * @throws IOException if the files can't be read
+     */
+    public List<Item> loadAll() throws IOException {
+        final List<Item> items = new ArrayList<>();
+        load(Integer.MAX_VALUE, Integer.MAX_VALUE, new LoadListener() {
+            @Override
+            public void onBatch(List<Item> batch) {
+                items.addAll(batch);
+            }
+        });
+        return items;
+    }
+
+    /**
+     * To load the items in batches
+     * Items are decoded from the log one by one, so the first batch is handed over
+     * before the rest of the list is decoded.
+     * Called on the thread which loads, the listener gets its own copy of every batch.
+     * @param firstBatchSize number of items in the first batch
+     * @param batchSize number of items in the following batches
+     * @param listener to receive the batches in order
+     * @throws IOException if the files can't be read
+     */
+    public void load(int firstBatchSize, int batchSize, LoadListener listener) throws IOException {
+        ItemLog log = log();
+        int size = log.size();
+
+        int start = 0, limit = firstBatchSize;
+        while (start < size) {
+            int end = (int) Math.min(size, (long) start + limit);
+            List<Item> batch = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                batch.add(log.get(i));
+            }
+            listener.onBatch(batch);
+            start = end;
+            limit = batchSize;
+        }
+    }
+
+    /**
+     * @return number of saved items
+     * @throws IOException if the log can't be opened
+     */
+    public int size() throws IOException {
+        return log().size();
+    }
+
+    /**
+     * To decode a single item without loading the others
+     * @param position position of the item
+     * @return saved item
+     * @throws IOException if the log can't be opened
+     */
+    public Item get(int position) throws IOException {
+        return log().get(position);
+    }
+
+    /**
+     * To get a list which decodes the saved items on demand
+     * Changes made to it are written to the store in the background & made durable by {@link #append}.
+     * @return paged list of the saved items
+     * @throws IOException if the log can't be opened
+     */
+    public PagedItemList openPagedList() throws IOException {
+        paged = new PagedItemList(log());
+        return paged;
+    }
+
+    /**
+     * @return true if nothing has been saved in the store yet
+     */
+    public boolean isEmpty() {
+        return !logFile.exists();
+    }
+
+
+
+
+    //Write -----------------------------------------------------------------------------------------
+
+    /**
+     * To save all the items in a single transaction
+     * The log is replaced by one holding only the given items.
+     * @param items items to be saved
+     * @throws IOException if the files can't be written
+     */
+    public void saveAll(List<Item> items) throws IOException {
+        log().rewrite(items);
+        needsRewrite = false;
+    }
+
+    /**
+     * @return true if the next flush has to save all the items instead of appending changes
+     */
+    public boolean needsRewrite() {
+        return needsRewrite;
+    }
+
+    /**
+     * To force the next flush to save all the items
+     * Used when an append failed & the log may be out of sync with the list.
+     */
+    public void requestRewrite() {
+        needsRewrite = true;
+    }
+
+    /**
+     * To insert an item
+     * @param position index at which the item is inserted
+     * @param item item to be inserted
+     * @throws IOException if the log can't be written
+     */
+    public void insert(int position, Item item) throws IOException {
+        append(Collections.singletonList(ItemChange.insert(position, item)));
+    }
+
+    /**
+     * To update an item
+     * @param position index of the item
+     * @param item new value of the item
+     * @throws IOException if the log can't be written
+     */
+    public void update(int position, Item item) throws IOException {
+        append(Collections.singletonList(ItemChange.update(position, item)));
+    }
+
+    /**
+     * To delete an item
+     * @param position index of the item
+     * @throws IOException if the log can't be written
+     */
+    public void delete(int position) throws IOException {
+        append(Collections.singletonList(ItemChange.delete(position)));
+    }
+
+    /**
+     * To move an item
+     * @param fromPosition initial position
+     * @param toPosition final position
+     * @throws IOException if the log can't be written
+     */
+    public void move(int fromPosition, int toPosition) throws IOException {
+        append(Collections.singletonList(ItemChange.move(fromPosition, toPosition)));
+    }
+
+    /**
+     * To append changes to the log & flush them to the disk
+     * Changes of the paged list which aren't written yet are written first.
+     * The log is compacted once it holds more overwritten records than items.
+     * @param changes operations to be appended, in the order they were made
+     * @throws IOException if the log can't be written
+     */
+    public void append(List<ItemChange> changes) throws IOException {
+        ItemLog log = log();
+        if (paged != null) {
+            paged.flush();
+        }
+        log.append(changes);
+        log.sync();
+        if (paged != null) {
+            //Failed writes of the paged list were kept & are now in the log
+            needsRewrite = false;
+        }
+
+        if (log.getRecordCount() - log.size() > Math.max(MIN_COMPACTION_GARBAGE, log.size())) {
+            log.compact();
+        }
+    }
+
+
+
+
+    //Migration -------------------------------------------------------------------------------------
+
+    /**
+     * To move the items saved by older versions in the shared preferences into the store
+     * The json strings are read once, saved in the binary format & then removed from the preferences.
+     * @param preferences preferences holding the items as json strings
+     * @throws IOException if the store can't be written
+     */
+    public void migrateFromPreferences(SharedPreferences preferences) throws IOException {
+        int itemCount = preferences.getInt(Constants.NO_OF_IMG, 0);
+        if (itemCount == 0 || !isEmpty()) {
+            return;
+        }
+
+        List<Item> items = new ArrayList<>();
+        SharedPreferences.Editor editor = preferences.edit();
+        for (int i = 1; i <= itemCount; i++) {
+            Item item = gson.fromJson(preferences.getString(Constants.ITEMS + i, ""), Item.class);
+            if (item != null) {
+                //Json of older versions has no id
+                items.add(item.id == 0 ? new Item(item.url, item.color, item.label) : item);
+            }
+            editor.remove(Constants.ITEMS + i);
+        }
+
+        saveAll(items);
+        editor.remove(Constants.NO_OF_IMG).apply();
+    }
+
+
+    /**
+     * Listener
+     * To receive the items as they are loaded.
+     */
+    public interface LoadListener {
+        void onBatch(List<Item> batch);
+    }
+}
@@ -0,0 +1,81 @@
+package com.streamliners.galleryapp.store;
+
+import com.streamliners.galleryapp.models.Item;
+
+import java.util.List;
+
+/**
+ * Single insert/update/delete/move operation on the list of items
+ * It is what the files of the {@link GalleryStore} are made of, see {@link ItemCodec} for the encoding.
+ */
+public class ItemChange {
+
+    //APPEND adds the item at the end of the list, snapshots are made of these only
+    static final int APPEND = 0, INSERT = 1, UPDATE = 2, DELETE = 3, MOVE = 4;
+
+    int op;
+    int position;
+    int toPosition;
+    Item item;
+
+    //Id of the item of a record read without decoding it, see ItemCodec#scan
+    long itemId;
+
+    //Item removed by a delete, kept in memory only to detect moves
+    Item removed;
+
+
+    static ItemChange append(Item item) {
+        return create(APPEND, 0, 0, item);
+    }
+
+    static ItemChange insert(int position, Item item) {
+        return create(INSERT, position, 0, item);
+    }
+
+    static ItemChange update(int position, Item item) {
+        return create(UPDATE, position, 0, item);
+    }
+
+    static ItemChange delete(int position) {
+        return create(DELETE, position, 0, null);
+    }
+
+    static ItemChange move(int fromPosition, int toPosition) {
+        return create(MOVE, fromPosition, toPosition, null);
+    }
+
+    private static ItemChange create(int op, int position, int toPosition, Item item) {
+        ItemChange change = new ItemChange();
+        change.op = op;
+        change.position = position;
+        change.toPosition = toPosition;
+        change.item = item;
+        return change;
+    }
+
+
+    /**
+     * To replay the operation
+     * @param items list on which the operation is applied
+     */
+    void applyTo(List<Item> items) {
+        switch (op) {
+            case APPEND:
+                items.add(item);
+                break;
+            case INSERT:
+                items.add(position, item);
+                break;
+            case UPDATE:
+                items.set(position, item);
+                break;
+            case DELETE:
+                items.remove(position);
+                break;
+            case MOVE:
+                items.add(toPosition, items.remove(position));
+                break;
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package com.streamliners.galleryapp.store;
+
+import com.streamliners.galleryapp.models.Item;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary format of the files of the {@link GalleryStore}.
+ *
+ * A file starts with a header (magic & version) followed by records.
+ * Every record is prefixed by its length & followed by the CRC32 of its payload,
+ * so a reader can skip it or detect a torn one. A length of 0 marks the end of the records:
+ *
+ *   record = length:varint, payload, crc:int32
+ *   payload = op:byte, [position:varint], [toPosition:varint], [item]
+ *   item   = id:varlong, url:string, color:int32, label:labelRef
+ *   string = byteCount:varint, utf-8 bytes
+ *   labelRef = 0 followed by a string for a label seen for the first time in the file,
+ *              otherwise index + 1 of the label in the {@link LabelTable}
+ *
+ * Position is absent for {@link ItemChange#APPEND} & toPosition is only present for {@link ItemChange#MOVE}.
+ * Files of version 1 have no item ids, decoded items get fresh ones.
+ */
+public class ItemCodec {
+
+    private static final byte[] MAGIC = {'G', 'A', 'L', 'Y'};
+    static final int VERSION = 2;
+    static final int MIN_VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + 1;
+    //Far above any record, a longer length is read from a corrupt file
+    private static final int MAX_RECORD_SIZE = 1 << 24;
+
+
+
+
+    //Header ----------------------------------------------------------------------------------------
+
+    /**
+     * To write the header of a file
+     * @param out stream of the new file
+     * @throws IOException if the stream can't be written
+     */
+    public static void writeHeader(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+    }
+
+    /**
+     * To check the header of a file
+     * @param header first {@link #HEADER_SIZE} bytes of the file
+     * @return version of the file
+     * @throws IOException if the file isn't in a format this version understands
+     */
+    static int checkHeader(byte[] header) throws IOException {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) {
+                throw new IOException("Not a gallery file");
+            }
+        }
+        int version = header[MAGIC.length];
+        if (version < MIN_VERSION || version > VERSION) {
+            throw new IOException("Unsupported gallery file version " + version);
+        }
+        return version;
+    }
+
+
+
+
+    //Decode ----------------------------------------------------------------------------------------
+
+    /**
+     * To decode the record starting at the given offset
+     * The CRC isn't checked, records are expected to have been validated when the file was opened.
+     * @param buffer buffer holding the file, it isn't modified
+     * @param offset offset of the length of the record
+     * @param labels labels of the file
+     * @param version version of the file
+     * @return the change held by the record
+     */
+    static ItemChange decodeRecord(ByteBuffer buffer, int offset, LabelTable labels, int version) {
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset);
+        int length = readVarInt(record);
+        record.limit(record.position() + length);
+        return decode(record, labels, version);
+    }
+
+    /**
+     * To decode the payload of a record
+     * @param buffer buffer positioned at the op of the record, limited to its end
+     * @param labels labels seen so far in the file, inline labels are added to it
+     * @param version version of the file
+     * @return the change held by the record
+     */
+    static ItemChange decode(ByteBuffer buffer, LabelTable labels, int version) {
+        ItemChange change = new ItemChange();
+        change.op = buffer.get();
+
+        if (change.op != ItemChange.APPEND) {
+            change.position = readVarInt(buffer);
+        }
+        if (change.op == ItemChange.MOVE) {
+            change.toPosition = readVarInt(buffer);
+        }
+        if (change.op == ItemChange.APPEND || change.op == ItemChange.INSERT || change.op == ItemChange.UPDATE) {
+            long id = version >= 2 ? readVarLong(buffer) : 0;
+            String url = readString(buffer);
+            int color = buffer.getInt();
+            int labelRef = readVarInt(buffer);
+            String label = labelRef == 0 ? labels.add(readString(buffer)) : labels.get(labelRef - 1);
+            change.item = id == 0 ? new Item(url, color, label) : new Item(id, url, color, label);
+        }
+
+        return change;
+    }
+
+    /**
+     * To read the op & positions of a record without decoding its item
+     * Only the id of the item is read & labels seen for the first time are added to the table,
+     * as later records refer to them.
+     * @param buffer buffer positioned at the op of the record, limited to its end
+     * @param labels labels seen so far in the file
+     * @param version version of the file
+     * @param change change to fill, its item is left null
+     */
+    static void scan(ByteBuffer buffer, LabelTable labels, int version, ItemChange change) {
+        change.op = buffer.get();
+        change.position = change.op != ItemChange.APPEND ? readVarInt(buffer) : 0;
+        change.toPosition = change.op == ItemChange.MOVE ? readVarInt(buffer) : 0;
+        change.item = null;
+        change.itemId = 0;
+
+        if (change.op == ItemChange.APPEND || change.op == ItemChange.INSERT || change.op == ItemChange.UPDATE) {
+            change.itemId = version >= 2 ? readVarLong(buffer) : 0;
+            int urlLength = readVarInt(buffer);
+            //Url & color
+            buffer.position(buffer.position() + urlLength + 4);
+            if (readVarInt(buffer) == 0) {
+                labels.add(readString(buffer));
+            }
+        }
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0, shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+
+
+    //Encode ----------------------------------------------------------------------------------------
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+
+
+
+    //Reader & Writer -------------------------------------------------------------------------------
+
+    /**
+     * Streaming writer of records
+     * Every record is encoded in a reused buffer & then written with its length in front.
+     */
+    public static class Writer implements Closeable, Flushable {
+
+        private final OutputStream out;
+        private final LabelTable labels;
+        private final RecordBuffer record = new RecordBuffer();
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * Constructor
+         * @param out stream positioned after the header or the last record of the file
+         * @param labels labels already written to the file
+         */
+        public Writer(OutputStream out, LabelTable labels) {
+            this.out = out;
+            this.labels = labels;
+        }
+
+        /**
+         * To write a record
+         * @param change change to be encoded
+         * @return number of bytes written
+         * @throws IOException if the stream can't be written
+         */
+        public int write(ItemChange change) throws IOException {
+            record.reset();
+            record.write(change.op);
+
+            if (change.op != ItemChange.APPEND) {
+                writeVarInt(record, change.position);
+            }
+            if (change.op == ItemChange.MOVE) {
+                writeVarInt(record, change.toPosition);
+            }
+            if (change.op == ItemChange.APPEND || change.op == ItemChange.INSERT || change.op == ItemChange.UPDATE) {
+                writeVarLong(record, change.item.id);
+                writeString(record, change.item.url);
+                writeInt(record, change.item.color);
+
+                String label = change.item.label == null ? "" : change.item.label;
+                int index = labels.indexOf(label);
+                if (index < 0) {
+                    writeVarInt(record, 0);
+                    writeString(record, label);
+                    labels.add(label);
+                } else {
+                    writeVarInt(record, index + 1);
+                }
+            }
+
+            crc.reset();
+            crc.update(record.array(), 0, record.size());
+
+            int start = varIntSize(record.size());
+            writeVarInt(out, record.size());
+            record.writeTo(out);
+            writeInt(out, (int) crc.getValue());
+            return start + record.size() + 4;
+        }
+
+        private static int varIntSize(int value) {
+            int size = 1;
+            while ((value & ~0x7F) != 0) {
+                value >>>= 7;
+                size++;
+            }
+            return size;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * Reused buffer of the record being written, gives access to its bytes without a copy
+         */
+        private static class RecordBuffer extends ByteArrayOutputStream {
+
+            RecordBuffer() {
+                super(128);
+            }
+
+            byte[] array() {
+                return buf;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+
+    /**
+     * Streaming reader of records
+     */
+    public static class Reader implements Closeable {
+
+        private final InputStream in;
+        private final LabelTable labels;
+        private final CRC32 crc = new CRC32();
+        private byte[] buffer = new byte[128];
+        private long offset;
+        private final int version;
+        private final ItemChange scanned = new ItemChange();
+
+        /**
+         * Constructor
+         * @param in stream positioned at the start of the file
+         * @param labels table filled with the labels of the file as they are read
+         * @throws IOException if the header is missing or unsupported
+         */
+        public Reader(InputStream in, LabelTable labels) throws IOException {
+            this.in = in;
+            this.labels = labels;
+
+            byte[] header = new byte[HEADER_SIZE];
+            readFully(header, HEADER_SIZE);
+            version = checkHeader(header);
+            offset = HEADER_SIZE;
+        }
+
+        /**
+         * @return version of the file
+         */
+        public int getVersion() {
+            return version;
+        }
+
+        /**
+         * @return offset in the file of the next record
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * To read the next record
+         * @return next change or null at the end of the records
+         * @throws EOFException if the record is torn, i.e. incomplete or not matching its CRC
+         * @throws IOException if the stream can't be read
+         */
+        public ItemChange read() throws IOException {
+            int length = next();
+            return length < 0 ? null : decode(ByteBuffer.wrap(buffer, 0, length), labels, version);
+        }
+
+        /**
+         * To read the next record without decoding its item, see {@link ItemCodec#scan}
+         * The record is still checked against its CRC.
+         * @return next change, reused by the next call, or null at the end of the records
+         * @throws EOFException if the record is torn, i.e. incomplete or not matching its CRC
+         * @throws IOException if the stream can't be read
+         */
+        ItemChange skip() throws IOException {
+            int length = next();
+            if (length < 0) {
+                return null;
+            }
+            scan(ByteBuffer.wrap(buffer, 0, length), labels, version, scanned);
+            return scanned;
+        }
+
+        /**
+         * To read the next record into the buffer & check its CRC
+         * @return length of the payload or -1 at the end of the records
+         */
+        private int next() throws IOException {
+            int first = in.read();
+            if (first <= 0) {
+                return -1;
+            }
+
+            int length = first & 0x7F, shift = 7, b = first, lengthSize = 1;
+            while ((b & 0x80) != 0) {
+                b = in.read();
+                if (b < 0 || shift > 28) {
+                    throw new EOFException("Torn record");
+                }
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+                lengthSize++;
+            }
+            if (length < 0 || length > MAX_RECORD_SIZE) {
+                throw new EOFException("Torn record");
+            }
+
+            if (buffer.length < length + 4) {
+                buffer = new byte[Math.max(length + 4, buffer.length * 2)];
+            }
+            readFully(buffer, length + 4);
+
+            crc.reset();
+            crc.update(buffer, 0, length);
+            if ((int) crc.getValue() != ByteBuffer.wrap(buffer, length, 4).getInt()) {
+                throw new EOFException("Torn record");
+            }
+
+            offset += lengthSize + length + 4;
+            return length;
+        }
+
+        private void readFully(byte[] bytes, int length) throws IOException {
+            int read = 0;
+            while (read < length) {
+                int count = in.read(bytes, read, length - read);
+                if (count < 0) {
+                    throw new EOFException("Torn record");
+                }
+                read += count;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Labels of a file in the order they first appear in it
+     * Repeated labels are stored once & decoded items share the same String instance.
+     */
+    public static class LabelTable {
+
+        private final List<String> labels = new ArrayList<>();
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        String add(String label) {
+            Integer index = indices.get(label);
+            if (index != null) {
+                return labels.get(index);
+            }
+            indices.put(label, labels.size());
+            labels.add(label);
+            return label;
+        }
+
+        String get(int index) {
+            return labels.get(index);
+        }
+
+        int indexOf(String label) {
+            Integer index = indices.get(label);
+            return index == null ? -1 : index;
+        }
+    }
+}
@@ -0,0 +1,497 @@
+package com.streamliners.galleryapp.store;
+
+import android.util.Log;
+
+import com.streamliners.galleryapp.models.Item;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only log of the changes made to the list of items, accessed through a {@link MappedByteBuffer}.
+ *
+ * On open the records are replayed into an index holding, for every position of the list,
+ * the offset of the record of its item. Only the op & positions of the records are read then,
+ * the item at a position is decoded on demand, so the list is never materialized in memory.
+ * A torn record at the end of the file (crash during a write) is truncated on open, so is a corrupt
+ * record in the middle with the ones after it, & a file written by an older version is compacted into the current format.
+ * Records overwritten by later changes stay in the file until {@link #compact()} rewrites it.
+ * Writes are serialized by a lock of their own: a compaction writes the new file while the old one
+ * is still read, & only holds the monitor of the log to swap them.
+ */
+public class ItemLog implements Closeable {
+
+    private static final String TAG = "ItemLog";
+    private static final int MIN_CAPACITY = 64 * 1024;
+
+    private final File file;
+    private RandomAccessFile randomAccessFile;
+    private MappedByteBuffer buffer;
+
+    //Offset after the last record, the rest of the mapping is zeroes
+    private int end;
+    private int recordCount;
+
+    //Offset of the record & id of the item at every position
+    private int[] offsets;
+    private long[] ids;
+    private int size;
+
+    //Held by appends, compactions & rewrites, which replace the labels & the file
+    private final Object writeLock = new Object();
+
+    private ItemCodec.LabelTable labels;
+    private int version;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+
+    private ItemLog(File file) {
+        this.file = file;
+    }
+
+    /**
+     * To open the log, creating the file if needed
+     * @param file file of the log
+     * @return opened log
+     * @throws IOException if the file can't be read or mapped, or isn't a gallery file
+     */
+    public static ItemLog open(File file) throws IOException {
+        ItemLog log = new ItemLog(file);
+        log.load();
+        return log;
+    }
+
+
+
+
+    //Open ------------------------------------------------------------------------------------------
+
+    /**
+     * To replay the records into the index & map the file
+     * Items aren't decoded, only their ids are read so fresh ones don't collide with them.
+     * The file is truncated after the last record which can be replayed.
+     * @throws IOException if the file can't be read or mapped, or if it isn't a gallery file
+     *                     of a version this one understands; it is left untouched then
+     */
+    private void load() throws IOException {
+        close();
+
+        labels = new ItemCodec.LabelTable();
+        offsets = new int[64];
+        ids = new long[64];
+        size = 0;
+        recordCount = 0;
+        end = ItemCodec.HEADER_SIZE;
+        version = ItemCodec.VERSION;
+
+        long maxId = 0;
+        boolean isInvalid = false;
+        boolean hasHeader = file.length() >= ItemCodec.HEADER_SIZE;
+        if (hasHeader) {
+            try (ItemCodec.Reader reader = new ItemCodec.Reader(
+                    new BufferedInputStream(new FileInputStream(file)), labels)) {
+                version = reader.getVersion();
+                while (true) {
+                    int offset = (int) reader.getOffset();
+                    ItemChange change;
+                    try {
+                        change = reader.skip();
+                        if (change == null) {
+                            break;
+                        }
+                        apply(change, offset);
+                    } catch (EOFException e) {
+                        Log.w(TAG, "Truncating torn record at " + offset, e);
+                        break;
+                    } catch (RuntimeException e) {
+                        //Record matching its CRC but not the list, e.g. a position out of bounds
+                        Log.w(TAG, "Truncating invalid record at " + offset, e);
+                        isInvalid = true;
+                        break;
+                    }
+                    maxId = Math.max(maxId, change.itemId);
+                    recordCount++;
+                    end = (int) reader.getOffset();
+                }
+            }
+        }
+        Item.reserveId(maxId);
+
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.getChannel().truncate(hasHeader ? end : 0);
+        if (isInvalid) {
+            //The index & labels may hold part of the invalid record, replayed again without it
+            load();
+            return;
+        }
+        map(Math.max(MIN_CAPACITY, end * 2));
+
+        if (!hasHeader) {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            ItemCodec.writeHeader(header);
+            buffer.position(0);
+            buffer.put(header.toByteArray());
+        }
+
+        if (version != ItemCodec.VERSION) {
+            //Items of older files get their ids as they are decoded, compacting persists them
+            compact();
+        }
+    }
+
+    private void map(int capacity) throws IOException {
+        buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+
+
+
+    //Read ------------------------------------------------------------------------------------------
+
+    /**
+     * @return number of items in the list
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return number of records in the file, including the ones overwritten by later changes
+     */
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * To decode the item at a position
+     * @param position position of the item in the list
+     * @return decoded item
+     */
+    public synchronized Item get(int position) {
+        checkPosition(position, size);
+        return ItemCodec.decodeRecord(buffer, offsets[position], labels, version).item;
+    }
+
+    /**
+     * To decode the items of a range of positions at once, so no write lands in between
+     * @param from position of the first item
+     * @param to position after the last item, clipped to the size of the list
+     * @return decoded items
+     */
+    public synchronized Item[] get(int from, int to) {
+        int end = Math.min(to, size);
+        Item[] items = new Item[Math.max(0, end - from)];
+        for (int i = from; i < end; i++) {
+            items[i - from] = ItemCodec.decodeRecord(buffer, offsets[i], labels, version).item;
+        }
+        return items;
+    }
+
+    /**
+     * To get the id of the item at a position without decoding it
+     * Ids of files written by older versions are only known once the file is compacted.
+     * @param position position of the item in the list
+     * @return id of the item
+     */
+    public synchronized long idAt(int position) {
+        checkPosition(position, size);
+        return ids[position];
+    }
+
+    /**
+     * @return ids of the items, in order
+     */
+    public synchronized long[] ids() {
+        return Arrays.copyOf(ids, size);
+    }
+
+
+
+
+    //Write -----------------------------------------------------------------------------------------
+
+    /**
+     * To append changes at the end of the log
+     * The records are written to the mapping; call {@link #sync()} to make them durable.
+     * @param changes changes in the order they were made
+     * @throws IOException if the file can't be grown
+     * @throws IndexOutOfBoundsException if a change doesn't fit the list, nothing is written then
+     */
+    public void append(List<ItemChange> changes) throws IOException {
+        append(changes, null);
+    }
+
+    /**
+     * To append changes at the end of the log & be told when they can be read
+     * @param changes changes in the order they were made
+     * @param onApplied run holding the monitor of the log as soon as the changes are in the index,
+     *                  so a reader holding the monitor sees the log either before or after them.
+     *                  Not run if the file can't be grown
+     * @throws IOException if the file can't be grown
+     * @throws IndexOutOfBoundsException if a change doesn't fit the list, nothing is written then
+     */
+    public void append(List<ItemChange> changes, Runnable onApplied) throws IOException {
+        synchronized (writeLock) {
+            synchronized (this) {
+                appendRecords(changes);
+                if (onApplied != null) {
+                    onApplied.run();
+                }
+            }
+        }
+    }
+
+    private void appendRecords(List<ItemChange> changes) throws IOException {
+        //Checked before anything is encoded, a failure can't leave records in the mapping
+        checkChanges(changes);
+
+        pending.reset();
+        ItemCodec.Writer writer = new ItemCodec.Writer(pending, labels);
+
+        int[] recordOffsets = new int[changes.size()];
+        int offset = end;
+        for (int i = 0; i < changes.size(); i++) {
+            recordOffsets[i] = offset;
+            offset += writer.write(changes.get(i));
+        }
+
+        try {
+            //One more byte for the zero marking the end of the records
+            if (offset + 1 > buffer.capacity()) {
+                map(Math.max(offset + 1, buffer.capacity() * 2));
+            }
+        } catch (IOException e) {
+            //Labels of the unwritten records are in the table, start afresh from the file
+            load();
+            throw e;
+        }
+
+        buffer.position(end);
+        buffer.put(pending.toByteArray());
+
+        for (int i = 0; i < changes.size(); i++) {
+            apply(changes.get(i), recordOffsets[i]);
+        }
+        recordCount += changes.size();
+        end = offset;
+    }
+
+    /**
+     * To flush the mapping to the disk
+     */
+    public void sync() {
+        MappedByteBuffer mapping;
+        synchronized (this) {
+            mapping = buffer;
+        }
+        mapping.force();
+    }
+
+    /**
+     * To rewrite the log with only the current items, dropping overwritten records
+     * Items are decoded from the current file while the new one is written, the log can be read meanwhile.
+     * @throws IOException if the file can't be written
+     */
+    public void compact() throws IOException {
+        synchronized (writeLock) {
+            final int count;
+            final int[] sourceOffsets;
+            final ByteBuffer source;
+            synchronized (this) {
+                count = size;
+                sourceOffsets = Arrays.copyOf(offsets, size);
+                source = buffer.duplicate();
+            }
+
+            //Labels & version only change with writes, which wait for the write lock
+            replace(new AbstractList<Item>() {
+                @Override
+                public Item get(int index) {
+                    return ItemCodec.decodeRecord(source, sourceOffsets[index], labels, version).item;
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            });
+        }
+    }
+
+    /**
+     * To replace the content of the log with the given items
+     * @param items items to be saved
+     * @throws IOException if the file can't be written
+     */
+    public void rewrite(List<Item> items) throws IOException {
+        synchronized (writeLock) {
+            replace(items);
+        }
+    }
+
+    /**
+     * To write the items to a new file & swap it with the current one
+     * The new file is written next to the old one & renamed over it, so a crash
+     * leaves either the old or the new list. The index of the new file is built as it is written,
+     * so the swap doesn't replay it.
+     * @param items items to be saved
+     * @throws IOException if the file can't be written
+     */
+    private void replace(List<Item> items) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        ItemCodec.LabelTable newLabels = new ItemCodec.LabelTable();
+        int[] newOffsets = new int[Math.max(64, items.size())];
+        long[] newIds = new long[newOffsets.length];
+        int count = 0;
+        int offset = ItemCodec.HEADER_SIZE;
+
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(out);
+            ItemCodec.writeHeader(buffered);
+            ItemCodec.Writer writer = new ItemCodec.Writer(buffered, newLabels);
+            for (Item item : items) {
+                if (item != null) {
+                    newOffsets[count] = offset;
+                    newIds[count++] = item.id;
+                    offset += writer.write(ItemChange.append(item));
+                }
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+
+        synchronized (this) {
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to replace " + file);
+            }
+            close();
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            map(Math.max(MIN_CAPACITY, offset * 2));
+
+            labels = newLabels;
+            version = ItemCodec.VERSION;
+            offsets = newOffsets;
+            ids = newIds;
+            size = count;
+            recordCount = count;
+            end = offset;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (randomAccessFile != null) {
+            randomAccessFile.close();
+            randomAccessFile = null;
+        }
+    }
+
+
+
+
+    //Index -----------------------------------------------------------------------------------------
+
+    /**
+     * To apply a change to the index
+     * @param change change read from or written to the log
+     * @param offset offset of the record of the change
+     */
+    private void apply(ItemChange change, int offset) {
+        //Records read on open aren't decoded, only their id is
+        long id = change.item != null ? change.item.id : change.itemId;
+        switch (change.op) {
+            case ItemChange.APPEND:
+                insertEntry(size, offset, id);
+                break;
+            case ItemChange.INSERT:
+                insertEntry(change.position, offset, id);
+                break;
+            case ItemChange.UPDATE:
+                checkPosition(change.position, size);
+                offsets[change.position] = offset;
+                ids[change.position] = id;
+                break;
+            case ItemChange.DELETE:
+                removeEntry(change.position);
+                break;
+            case ItemChange.MOVE:
+                checkPosition(change.position, size);
+                int movedOffset = offsets[change.position];
+                long movedId = ids[change.position];
+                removeEntry(change.position);
+                insertEntry(change.toPosition, movedOffset, movedId);
+                break;
+        }
+    }
+
+    /**
+     * To check the positions of changes against the size of the list as they are applied
+     * @param changes changes in the order they were made
+     * @throws IndexOutOfBoundsException if a change doesn't fit the list
+     */
+    private void checkChanges(List<ItemChange> changes) {
+        int count = size;
+        for (ItemChange change : changes) {
+            switch (change.op) {
+                case ItemChange.APPEND:
+                    count++;
+                    break;
+                case ItemChange.INSERT:
+                    checkPosition(change.position, count + 1);
+                    count++;
+                    break;
+                case ItemChange.UPDATE:
+                    checkPosition(change.position, count);
+                    break;
+                case ItemChange.DELETE:
+                    checkPosition(change.position, count);
+                    count--;
+                    break;
+                case ItemChange.MOVE:
+                    checkPosition(change.position, count);
+                    checkPosition(change.toPosition, count);
+                    break;
+            }
+        }
+    }
+
+    private void insertEntry(int position, int offset, long id) {
+        checkPosition(position, size + 1);
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+        System.arraycopy(offsets, position, offsets, position + 1, size - position);
+        System.arraycopy(ids, position, ids, position + 1, size - position);
+        offsets[position] = offset;
+        ids[position] = id;
+        size++;
+    }
+
+    private void removeEntry(int position) {
+        checkPosition(position, size);
+        System.arraycopy(offsets, position + 1, offsets, position, size - position - 1);
+        System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+        size--;
+    }
+
+    private static void checkPosition(int position, int limit) {
+        if (position < 0 || position >= limit) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + limit);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.streamliners.galleryapp.store;
+
+import android.util.Log;
+
+import com.streamliners.galleryapp.helpers.AppExecutors;
+import com.streamliners.galleryapp.models.Item;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * List of items reading & writing the {@link ItemLog}
+ *
+ * Items are decoded a page at a time & only the pages around the last accessed position are kept,
+ * so the memory used doesn't depend on the size of the gallery. While scrolling, the next page
+ * in the direction of travel is decoded on the disk thread before it is needed.
+ * Changes are kept in memory & appended to the log on the disk thread, so the main thread never
+ * waits for the file; until they are written, reads resolve positions through them.
+ * {@link GalleryStore#append} writes the remaining ones & makes them durable.
+ */
+public class PagedItemList extends AbstractList<Item> {
+
+    private static final String TAG = "PagedItemList";
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_PAGES = 8;
+
+    private final ItemLog log;
+
+    //Least recently used page is dropped first, also the lock of the fields below.
+    //Taken after the monitor of the log when both are held, as by a flush swapping the written changes
+    private final Map<Integer, Item[]> pages = new LinkedHashMap<Integer, Item[]>(MAX_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Item[]> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final Set<Integer> prefetching = new HashSet<>();
+
+    //Incremented every time written changes are swapped in, pages decoded before are discarded
+    private int generation;
+    private int lastPage;
+
+    //Changes not written to the log yet, oldest first
+    private final List<ItemChange> unwritten = new ArrayList<>();
+    private boolean isFlushScheduled;
+    private int size;
+
+    //Number of changes made & of changes written to the log
+    private int writeCount, writtenCount;
+
+    //Held by flushes, so the changes copied by one aren't appended again by another
+    private final Object flushLock = new Object();
+
+
+    /**
+     * Constructor
+     * @param log opened log of the items
+     */
+    PagedItemList(ItemLog log) {
+        this.log = log;
+        this.size = log.size();
+    }
+
+
+
+
+    //Read ------------------------------------------------------------------------------------------
+
+    @Override
+    public Item get(int index) {
+        checkIndex(index);
+        int page;
+        Item item;
+        while (true) {
+            int position;
+            int startGeneration;
+            synchronized (pages) {
+                position = resolve(index);
+                if (position < 0) {
+                    return unwritten.get(-1 - position).item;
+                }
+
+                page = position / PAGE_SIZE;
+                Item[] items = pages.get(page);
+                if (items != null) {
+                    item = items[position - page * PAGE_SIZE];
+                    break;
+                }
+                startGeneration = generation;
+            }
+
+            //Decoded without the lock, kept only if no write was swapped in meanwhile
+            Item[] items = decodePage(page);
+            synchronized (pages) {
+                if (generation == startGeneration) {
+                    pages.put(page, items);
+                    item = items[position - page * PAGE_SIZE];
+                    break;
+                }
+            }
+        }
+
+        if (page != lastPage) {
+            prefetch(page > lastPage ? page + 1 : page - 1);
+            lastPage = page;
+        }
+        return item;
+    }
+
+    /**
+     * To get the id of the item at a position without decoding it
+     * @param index position of the item
+     * @return id of the item
+     */
+    public long idAt(int index) {
+        checkIndex(index);
+        //Log first like a flush swapping the written changes, so they can't be swapped in between
+        synchronized (log) {
+            synchronized (pages) {
+                int position = resolve(index);
+                return position < 0 ? unwritten.get(-1 - position).item.id : log.idAt(position);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (pages) {
+            return size;
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        }
+    }
+
+    /**
+     * To find where the item at a position is, walking the unwritten changes from the newest one
+     * @param index position of the item in the list
+     * @return position of the item in the log, or -1 - index of the unwritten change holding it
+     */
+    private int resolve(int index) {
+        int position = index;
+        for (int i = unwritten.size() - 1; i >= 0; i--) {
+            ItemChange change = unwritten.get(i);
+            if (change.op == ItemChange.DELETE) {
+                if (change.position <= position) {
+                    position++;
+                }
+            } else if (change.position == position) {
+                return -1 - i;
+            } else if (change.op == ItemChange.INSERT && change.position < position) {
+                position--;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * To decode all the items of a page of the log
+     * @param page index of the page
+     * @return items of the page
+     */
+    private Item[] decodePage(int page) {
+        return log.get(page * PAGE_SIZE, (page + 1) * PAGE_SIZE);
+    }
+
+    /**
+     * To decode a page on the disk thread
+     * @param page index of the page
+     */
+    private void prefetch(final int page) {
+        if (page < 0 || page * PAGE_SIZE >= log.size()) {
+            return;
+        }
+
+        final int startGeneration;
+        synchronized (pages) {
+            if (pages.containsKey(page) || !prefetching.add(page)) {
+                return;
+            }
+            startGeneration = generation;
+        }
+
+        AppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                Item[] items = decodePage(page);
+                synchronized (pages) {
+                    prefetching.remove(page);
+                    //Changes written meanwhile moved the items, the page will be decoded when needed
+                    if (generation == startGeneration && items.length > 0) {
+                        pages.put(page, items);
+                    }
+                }
+            }
+        });
+    }
+
+
+
+
+    //Write -----------------------------------------------------------------------------------------
+
+    @Override
+    public Item set(int index, Item item) {
+        Item old = get(index);
+        write(ItemChange.update(index, item));
+        return old;
+    }
+
+    @Override
+    public void add(int index, Item item) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        }
+        write(ItemChange.insert(index, item));
+        modCount++;
+    }
+
+    @Override
+    public Item remove(int index) {
+        Item old = get(index);
+        write(ItemChange.delete(index));
+        modCount++;
+        return old;
+    }
+
+    private void write(ItemChange change) {
+        synchronized (pages) {
+            unwritten.add(change);
+            writeCount++;
+            if (change.op == ItemChange.INSERT) {
+                size++;
+            } else if (change.op == ItemChange.DELETE) {
+                size--;
+            }
+
+            if (isFlushScheduled) {
+                return;
+            }
+            isFlushScheduled = true;
+        }
+
+        AppExecutors.diskIO().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    //Changes are kept & written by the next flush
+                    Log.e(TAG, "Unable to write items", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * To append the unwritten changes to the log
+     * Called on the disk thread, which is the only one writing to the log.
+     * The changes are written without holding the pages, so the list is read & written meanwhile;
+     * they are swapped out of the overlay as the log applies them, changes made since are kept.
+     * @return number of changes made to the list which are in the log
+     * @throws IOException if the log can't be written, the changes are kept then
+     */
+    int flush() throws IOException {
+        synchronized (flushLock) {
+            final List<ItemChange> written;
+            final int count;
+            synchronized (pages) {
+                isFlushScheduled = false;
+                written = new ArrayList<>(unwritten);
+                count = writeCount;
+            }
+
+            if (!written.isEmpty()) {
+                log.append(written, new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (pages) {
+                            unwritten.subList(0, written.size()).clear();
+                            pages.clear();
+                            generation++;
+                        }
+                    }
+                });
+            }
+
+            synchronized (pages) {
+                writtenCount = count;
+                return writtenCount;
+            }
+        }
+    }
+
+    /**
+     * @return number of changes made to the list
+     */
+    int getWriteCount() {
+        synchronized (pages) {
+            return writeCount;
+        }
+    }
+
+    /**
+     * To read the list as saved in the log, without the page cache
+     * Called on the disk thread after a flush, no change is written meanwhile.
+     * @return items of the log, decoded on demand
+     */
+    List<Item> logView() {
+        return new AbstractList<Item>() {
+            @Override
+            public Item get(int index) {
+                return log.get(index);
+            }
+
+            @Override
+            public int size() {
+                return log.size();
+            }
+        };
+    }
+
+    /**
+     * @return ids of the items saved in the log, in order
+     */
+    long[] logIds() {
+        return log.ids();
+    }
+}
@@ -0,0 +1,128 @@
+package com.streamliners.galleryapp.adapters;
+
+import com.streamliners.galleryapp.models.Item;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link ColorIndex}
+ */
+public class ColorIndexTest {
+
+    private static final int BENCHMARK_ITEM_COUNT = 20000;
+
+    @Test
+    public void nearest_findsClosestColorsFirst() {
+        ColorIndex index = new ColorIndex();
+        index.add(new Item(1, "", 0xFFFF0000, "red"));
+        index.add(new Item(2, "", 0xFFEE1111, "dark red"));
+        index.add(new Item(3, "", 0xFF0000FF, "blue"));
+        index.add(new Item(4, "", 0xFF00FF00, "green"));
+
+        assertEquals(Arrays.asList(1L, 2L), index.nearest(0xFFFF0101, 2));
+        assertEquals(4, index.nearest(0xFF0000FF, 10).size());
+        assertEquals(Long.valueOf(3), index.nearest(0xFF0000FF, 10).get(0));
+
+        index.remove(new Item(1, "", 0xFFFF0000, "red"));
+        assertEquals(Collections.singletonList(2L), index.nearest(0xFFFF0000, 1));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void nearest_matchesBruteForceScan() {
+        Random random = new Random(3);
+        ColorIndex index = new ColorIndex();
+        Map<Long, Integer> colors = new HashMap<>();
+        for (long id = 0; id < BENCHMARK_ITEM_COUNT; id++) {
+            int color = 0xFF000000 | random.nextInt(0x1000000);
+            colors.put(id, color);
+            index.add(new Item(id, "", color, ""));
+        }
+
+        //Random colors & the corners of the RGB cube, whose Lab cells are at the edges of the grid
+        List<Integer> queries = new ArrayList<>();
+        for (int corner = 0; corner < 8; corner++) {
+            queries.add(0xFF000000 | ((corner & 1) != 0 ? 0xFF0000 : 0) | ((corner & 2) != 0 ? 0xFF00 : 0)
+                    | ((corner & 4) != 0 ? 0xFF : 0));
+        }
+        for (int i = 0; i < 200; i++) {
+            queries.add(0xFF000000 | random.nextInt(0x1000000));
+        }
+
+        long indexTime = 0, scanTime = 0;
+        for (int query : queries) {
+            for (int k : new int[]{1, 12, 100}) {
+                long startTime = System.nanoTime();
+                List<Long> found = index.nearest(query, k);
+                indexTime += System.nanoTime() - startTime;
+
+                startTime = System.nanoTime();
+                double[] scanned = new double[colors.size()];
+                int count = 0;
+                for (int color : colors.values()) {
+                    scanned[count++] = distance(query, color);
+                }
+                Arrays.sort(scanned);
+                scanTime += System.nanoTime() - startTime;
+
+                assertEquals(k, found.size());
+                for (int i = 0; i < k; i++) {
+                    //Compared by distance, ties may be returned in any order
+                    assertEquals(String.format(Locale.ROOT, "#%06X, k %d, neighbour %d", query & 0xFFFFFF, k, i),
+                            scanned[i], distance(query, colors.get(found.get(i))), 0.01);
+                }
+            }
+        }
+
+        System.out.println("ColorIndex vs brute force Lab scan & sort, " + BENCHMARK_ITEM_COUNT + " items: "
+                + queries.size() * 3 + " queries in " + indexTime / 1000000 + " vs " + scanTime / 1000000 + " ms ("
+                + String.format(Locale.ROOT, "%.3fx", (double) indexTime / scanTime) + ")");
+    }
+
+    @Test
+    public void nearest_returnsAllItemsOfASmallIndex() {
+        ColorIndex index = new ColorIndex();
+        index.add(new Item(1, "", 0xFF000000, "black"));
+        index.add(new Item(2, "", 0xFFFFFFFF, "white"));
+
+        assertEquals(Arrays.asList(2L, 1L), index.nearest(0xFFFEFEFE, 5));
+        assertEquals(Collections.emptyList(), new ColorIndex().nearest(0xFFFEFEFE, 5));
+    }
+
+    /**
+     * @return squared CIE76 difference between two colors, converted independently of the index
+     */
+    private static double distance(int color1, int color2) {
+        double[] lab1 = lab(color1), lab2 = lab(color2);
+        double dl = lab1[0] - lab2[0], da = lab1[1] - lab2[1], db = lab1[2] - lab2[2];
+        return dl * dl + da * da + db * db;
+    }
+
+    private static double[] lab(int color) {
+        double[] rgb = new double[3];
+        for (int i = 0; i < 3; i++) {
+            double c = ((color >> (16 - 8 * i)) & 0xFF) / 255.0;
+            rgb[i] = c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+        }
+        double x = (0.4124 * rgb[0] + 0.3576 * rgb[1] + 0.1805 * rgb[2]) / 0.95047;
+        double y = 0.2126 * rgb[0] + 0.7152 * rgb[1] + 0.0722 * rgb[2];
+        double z = (0.0193 * rgb[0] + 0.1192 * rgb[1] + 0.9505 * rgb[2]) / 1.08883;
+        double fx = f(x), fy = f(y), fz = f(z);
+        return new double[]{116 * fy - 16, 500 * (fx - fy), 200 * (fy - fz)};
+    }
+
+    private static double f(double t) {
+        return t > 216.0 / 24389 ? Math.cbrt(t) : (24389.0 / 27 * t + 16) / 116;
+    }
+}
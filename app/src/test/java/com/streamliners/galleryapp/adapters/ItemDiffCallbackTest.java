@@ -0,0 +1,62 @@
+package com.streamliners.galleryapp.adapters;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link ItemDiffCallback}
+ */
+public class ItemDiffCallbackTest {
+
+    @Test
+    public void editDistance_countsRemovedAndInsertedCards() {
+        assertEquals(0, ItemDiffCallback.editDistance(new long[]{1, 2, 3}, new long[]{1, 2, 3}));
+        assertEquals(2, ItemDiffCallback.editDistance(new long[]{1, 2, 3}, new long[]{1, 3, 4}));
+        //Moved card counted as removed & inserted
+        assertEquals(2, ItemDiffCallback.editDistance(new long[]{1, 2, 3}, new long[]{2, 3, 1}));
+        assertEquals(5, ItemDiffCallback.editDistance(new long[]{}, new long[]{1, 2, 3, 4, 5}));
+    }
+
+    @Test
+    public void editDistance_matchesLongestCommonSubsequence() {
+        Random random = new Random(5);
+        for (int round = 0; round < 200; round++) {
+            long[] oldIds = shuffledIds(random, random.nextInt(40));
+            long[] newIds = shuffledIds(random, random.nextInt(40));
+
+            int common = longestCommonSubsequence(oldIds, newIds);
+            assertEquals(oldIds.length + newIds.length - 2 * common, ItemDiffCallback.editDistance(oldIds, newIds));
+        }
+    }
+
+    private static long[] shuffledIds(Random random, int count) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 0; id < 60; id++) {
+            ids.add(id);
+        }
+        Collections.shuffle(ids, random);
+        long[] array = new long[count];
+        for (int i = 0; i < count; i++) {
+            array[i] = ids.get(i);
+        }
+        return array;
+    }
+
+    private static int longestCommonSubsequence(long[] a, long[] b) {
+        int[][] lengths = new int[a.length + 1][b.length + 1];
+        for (int i = 1; i <= a.length; i++) {
+            for (int j = 1; j <= b.length; j++) {
+                lengths[i][j] = a[i - 1] == b[j - 1]
+                        ? lengths[i - 1][j - 1] + 1
+                        : Math.max(lengths[i - 1][j], lengths[i][j - 1]);
+            }
+        }
+        return lengths[a.length][b.length];
+    }
+}
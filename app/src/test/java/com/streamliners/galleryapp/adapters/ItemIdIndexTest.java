@@ -0,0 +1,108 @@
+package com.streamliners.galleryapp.adapters;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link ItemIdIndex}
+ */
+public class ItemIdIndexTest {
+
+    @Test
+    public void positionOf_findsEveryId() {
+        List<Long> ids = ids(100);
+        ItemIdIndex index = new ItemIdIndex(toArray(ids));
+
+        assertIndexed(ids, index);
+        assertEquals(-1, index.positionOf(-5));
+    }
+
+    @Test
+    public void remove_shiftsFollowingPositions() {
+        List<Long> ids = ids(50);
+        ItemIdIndex index = new ItemIdIndex(toArray(ids));
+
+        long removed = ids.remove(10);
+        index.remove(10);
+
+        assertEquals(-1, index.positionOf(removed));
+        assertIndexed(ids, index);
+    }
+
+    @Test
+    public void move_updatesPositionsBetweenBothEnds() {
+        List<Long> ids = ids(20);
+        ItemIdIndex index = new ItemIdIndex(toArray(ids));
+
+        ids.add(15, ids.remove(3));
+        index.move(3, 15);
+        assertIndexed(ids, index);
+
+        ids.add(0, ids.remove(19));
+        index.move(19, 0);
+        assertIndexed(ids, index);
+    }
+
+    @Test
+    public void updates_matchListAfterRandomChanges() {
+        Random random = new Random(42);
+        List<Long> ids = ids(30);
+        ItemIdIndex index = new ItemIdIndex(toArray(ids));
+        long nextId = 1000;
+
+        for (int i = 0; i < 2000; i++) {
+            int op = random.nextInt(5);
+            if (ids.size() < 2 || op == 0) {
+                ids.add(nextId);
+                index.add(ids.size() - 1, nextId++);
+            } else if (op == 1) {
+                int position = random.nextInt(ids.size());
+                ids.add(position, nextId);
+                index.add(position, nextId++);
+            } else if (op == 2) {
+                int position = random.nextInt(ids.size());
+                ids.remove(position);
+                index.remove(position);
+            } else if (op == 3) {
+                int from = random.nextInt(ids.size()), to = random.nextInt(ids.size());
+                ids.add(to, ids.remove(from));
+                index.move(from, to);
+            } else {
+                int position = random.nextInt(ids.size());
+                ids.set(position, nextId);
+                index.set(position, nextId++);
+            }
+            assertIndexed(ids, index);
+        }
+    }
+
+    private static List<Long> ids(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= count; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static long[] toArray(List<Long> ids) {
+        long[] array = new long[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.get(i);
+        }
+        return array;
+    }
+
+    private static void assertIndexed(List<Long> ids, ItemIdIndex index) {
+        assertEquals(ids.size(), index.size());
+        assertArrayEquals(toArray(ids), index.ids());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i, index.positionOf(ids.get(i)));
+            assertEquals((long) ids.get(i), index.idAt(i));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.streamliners.galleryapp.adapters;
+
+import com.streamliners.galleryapp.models.Item;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link LabelIndex}
+ */
+public class LabelIndexTest {
+
+    private static final int BENCHMARK_ITEM_COUNT = 50000;
+    private static final int BENCHMARK_LABEL_COUNT = 3000;
+    private static final int BENCHMARK_QUERY_COUNT = 300;
+
+    @Test
+    public void search_findsLabelsContainingQueryIgnoringCase() {
+        LabelIndex index = new LabelIndex();
+        index.add(new Item(1, "", 0, "Golden Retriever"));
+        index.add(new Item(2, "", 0, "Goldfish"));
+        index.add(new Item(3, "", 0, "Dog"));
+        index.add(new Item(4, "", 0, "golden retriever"));
+
+        assertEquals(Arrays.asList(1L, 2L, 4L), sorted(index.search("GOLD")));
+        assertEquals(Arrays.asList(1L, 4L), sorted(index.search("retr")));
+        assertEquals(Collections.emptyList(), index.search("cat"));
+    }
+
+    @Test
+    public void search_shortQueriesCheckEveryLabel() {
+        LabelIndex index = new LabelIndex();
+        index.add(new Item(1, "", 0, "Dog"));
+        index.add(new Item(2, "", 0, "Frog"));
+        index.add(new Item(3, "", 0, null));
+
+        assertEquals(Arrays.asList(1L, 2L), sorted(index.search("og")));
+        assertEquals(Arrays.asList(1L, 2L, 3L), sorted(index.search("")));
+    }
+
+    @Test
+    public void remove_dropsOnlyTheRemovedItem() {
+        LabelIndex index = new LabelIndex();
+        Item first = new Item(1, "", 0, "Sunset");
+        index.add(first);
+        index.add(new Item(2, "", 0, "Sunset"));
+
+        index.remove(first);
+        assertEquals(Collections.singletonList(2L), index.search("sunset"));
+
+        //Edited label, the older version is removed & the new one added
+        index.remove(new Item(2, "", 0, "Sunset"));
+        index.add(new Item(2, "", 0, "Beach"));
+        assertEquals(Collections.emptyList(), index.search("sun"));
+        assertEquals(Collections.singletonList(2L), index.search("each"));
+    }
+
+    @Test
+    public void benchmark_matchesLinearScan() {
+        Random random = new Random(9);
+        String[] syllables = {"ka", "lo", "mi", "ne", "ru", "sa", "to", "vi", "ber", "dan", "gol", "pix"};
+        String[] labels = new String[BENCHMARK_LABEL_COUNT];
+        for (int i = 0; i < labels.length; i++) {
+            StringBuilder label = new StringBuilder();
+            int words = 1 + random.nextInt(3);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    label.append(' ');
+                }
+                int length = 2 + random.nextInt(3);
+                for (int k = 0; k < length; k++) {
+                    String syllable = syllables[random.nextInt(syllables.length)];
+                    label.append(k == 0 ? Character.toUpperCase(syllable.charAt(0)) + syllable.substring(1) : syllable);
+                }
+            }
+            labels[i] = label.toString();
+        }
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < BENCHMARK_ITEM_COUNT; i++) {
+            items.add(new Item(i, "", 0, labels[random.nextInt(labels.length)]));
+        }
+
+        long startTime = System.nanoTime();
+        LabelIndex index = new LabelIndex();
+        for (Item item : items) {
+            index.add(item);
+        }
+        long buildTime = System.nanoTime() - startTime;
+
+        //Substrings of labels of every length, so matches, short queries & misses are all timed
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < BENCHMARK_QUERY_COUNT; i++) {
+            String label = labels[random.nextInt(labels.length)];
+            int start = random.nextInt(label.length());
+            int end = Math.min(label.length(), start + 1 + random.nextInt(8));
+            String query = label.substring(start, end);
+            queries.add(i % 3 == 0 ? query.toUpperCase(Locale.ROOT) : i % 10 == 1 ? query + "zq" : query);
+        }
+
+        long indexTime = 0, scanTime = 0;
+        for (String query : queries) {
+            startTime = System.nanoTime();
+            List<Long> found = index.search(query);
+            indexTime += System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            String lowerCaseQuery = query.toLowerCase();
+            List<Long> scanned = new ArrayList<>();
+            for (Item item : items) {
+                if (item.label.toLowerCase().contains(lowerCaseQuery)) {
+                    scanned.add(item.id);
+                }
+            }
+            scanTime += System.nanoTime() - startTime;
+
+            assertEquals(query, scanned, sorted(found));
+        }
+
+        System.out.println("LabelIndex vs linear scan, " + BENCHMARK_ITEM_COUNT + " items: built in "
+                + buildTime / 1000000 + " ms, " + BENCHMARK_QUERY_COUNT + " queries in " + indexTime / 1000000
+                + " vs " + scanTime / 1000000 + " ms (" + String.format(Locale.ROOT, "%.3fx", (double) indexTime / scanTime) + ")");
+    }
+
+    private static List<Long> sorted(List<Long> ids) {
+        List<Long> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
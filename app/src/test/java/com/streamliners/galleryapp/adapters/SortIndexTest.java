@@ -0,0 +1,77 @@
+package com.streamliners.galleryapp.adapters;
+
+import com.streamliners.galleryapp.models.Item;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link SortIndex}
+ */
+public class SortIndexTest {
+
+    @Test
+    public void label_sortsByLabelThenId() {
+        SortIndex index = new SortIndex(SortIndex.LABEL, Arrays.asList(
+                new Item(3, "", 0, "b"), new Item(1, "", 0, "c"),
+                new Item(2, "", 0, "a"), new Item(4, "", 0, "b")));
+
+        assertArrayEquals(new long[]{2, 3, 4, 1}, index.ids());
+        assertEquals(2, index.positionOf(4));
+        assertEquals(-1, index.positionOf(5));
+    }
+
+    @Test
+    public void dateAdded_sortsById() {
+        SortIndex index = new SortIndex(SortIndex.DATE_ADDED, Arrays.asList(
+                new Item(7, "", 0, "x"), new Item(2, "", 0, "y"), new Item(5, "", 0, "z")));
+
+        assertArrayEquals(new long[]{2, 5, 7}, index.ids());
+        assertEquals(7, index.idAt(2));
+    }
+
+    @Test
+    public void updates_keepItemsSorted() {
+        List<Item> items = new ArrayList<>();
+        items.add(new Item(1, "", 0, "m"));
+        items.add(new Item(2, "", 0, "d"));
+        SortIndex index = new SortIndex(SortIndex.LABEL, items);
+
+        index.add(new Item(3, "", 0, "a"));
+        assertArrayEquals(new long[]{3, 2, 1}, index.ids());
+
+        //Edited item is added again with its new label
+        index.add(new Item(3, "", 0, "z"));
+        assertArrayEquals(new long[]{2, 1, 3}, index.ids());
+        assertEquals(2, index.positionOf(3));
+
+        index.remove(new Item(1, "", 0, "m"));
+        assertArrayEquals(new long[]{2, 3}, index.ids());
+        assertEquals(-1, index.positionOf(1));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void remove_dropsCollationKeysOfLabelsNoLongerUsed() {
+        SortIndex index = new SortIndex(SortIndex.LABEL, Arrays.asList(
+                new Item(1, "", 0, "cat"), new Item(2, "", 0, "cat"), new Item(3, "", 0, "dog")));
+        assertEquals(2, index.getCachedLabelCount());
+
+        index.remove(new Item(1, "", 0, "cat"));
+        assertEquals(2, index.getCachedLabelCount());
+        index.remove(new Item(2, "", 0, "cat"));
+        assertEquals(1, index.getCachedLabelCount());
+
+        //Edited label, the key of the older one is dropped
+        index.add(new Item(3, "", 0, "bird"));
+        assertEquals(1, index.getCachedLabelCount());
+        index.add(new Item(4, "", 0, "cat"));
+        assertArrayEquals(new long[]{3, 4}, index.ids());
+        assertEquals(2, index.getCachedLabelCount());
+    }
+}
@@ -0,0 +1,80 @@
+package com.streamliners.galleryapp.adapters;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link SubsequenceDiff}
+ */
+public class SubsequenceDiffTest {
+
+    @Test
+    public void removals_turnOldListIntoNewOne() {
+        long[] oldIds = {1, 2, 3, 4, 5, 6, 7};
+        long[] newIds = {2, 3, 6};
+
+        assertArrayEquals(newIds, dispatch(oldIds, newIds));
+    }
+
+    @Test
+    public void insertions_turnOldListIntoNewOne() {
+        long[] oldIds = {2, 5};
+        long[] newIds = {1, 2, 3, 4, 5, 6};
+
+        assertArrayEquals(newIds, dispatch(oldIds, newIds));
+    }
+
+    @Test
+    public void reorderedList_isNotASubsequence() {
+        assertNull(SubsequenceDiff.calculate(new long[]{1, 2, 3}, new long[]{3, 1}));
+        assertNull(SubsequenceDiff.calculate(new long[]{1, 2}, new long[]{2, 1, 3}));
+    }
+
+    /**
+     * To apply the notified ranges to the old ids, as the adapter would
+     * @return ids after the updates
+     */
+    private static long[] dispatch(final long[] oldIds, final long[] newIds) {
+        final List<Long> ids = new ArrayList<>();
+        for (long id : oldIds) {
+            ids.add(id);
+        }
+
+        SubsequenceDiff.calculate(oldIds, newIds).dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    //Inserted cards are read from the new list, where they follow the cards before them
+                    ids.add(position + i, newIds[position + i]);
+                }
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                ids.subList(position, position + count).clear();
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                fail();
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                fail();
+            }
+        });
+
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,131 @@
+package com.streamliners.galleryapp.helpers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link DiskLruIndex}
+ */
+public class DiskLruIndexTest {
+
+    private File dir;
+
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("lru").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+    }
+
+    @Test
+    public void get_marksFileAsMostRecentlyUsed() throws IOException {
+        DiskLruIndex index = new DiskLruIndex(dir, 30);
+        write(index, "a", 10);
+        write(index, "b", 10);
+        write(index, "c", 10);
+
+        //"a" is used, so "b" is now the least recently used one
+        assertNotNull(index.get("a"));
+        write(index, "d", 10);
+
+        assertNotNull(index.get("a"));
+        assertNull(index.get("b"));
+        assertFalse(new File(dir, "b").exists());
+        assertEquals(30, index.size());
+    }
+
+    @Test
+    public void put_keepsFileLargerThanCache() throws IOException {
+        DiskLruIndex index = new DiskLruIndex(dir, 10);
+        write(index, "a", 5);
+        write(index, "b", 20);
+
+        assertNull(index.get("a"));
+        assertNotNull(index.get("b"));
+        assertEquals(20, index.size());
+    }
+
+    @Test
+    public void open_dropsTemporaryFiles() throws IOException {
+        fill(new File(dir, "a"), 10);
+        fill(new File(dir, "write.tmp"), 10);
+
+        DiskLruIndex index = new DiskLruIndex(dir, 100);
+        assertEquals(10, index.size());
+        assertFalse(new File(dir, "write.tmp").exists());
+    }
+
+    @Test
+    public void get_dropsFileDeletedOutsideTheIndex() throws IOException {
+        DiskLruIndex index = new DiskLruIndex(dir, 100);
+        write(index, "a", 10);
+        assertTrue(new File(dir, "a").delete());
+
+        assertNull(index.get("a"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void put_skipsPinnedFiles() throws IOException {
+        DiskLruIndex index = new DiskLruIndex(dir, 20);
+        write(index, "a", 10);
+        write(index, "b", 10);
+
+        //"a" is being shared, so "b" is evicted in its place
+        index.pin("a");
+        index.pin("a");
+        write(index, "c", 10);
+        assertNotNull(index.get("a"));
+        assertNull(index.get("b"));
+
+        //Pins are counted, the file is evicted once every pin is released
+        index.unpin("a");
+        write(index, "d", 10);
+        assertNotNull(index.get("a"));
+        assertNull(index.get("c"));
+
+        index.unpin("a");
+        write(index, "e", 10);
+        assertNull(index.get("d"));
+        write(index, "f", 10);
+        assertNull(index.get("a"));
+        assertEquals(20, index.size());
+    }
+
+    @Test
+    public void keyOf_separatesParts() {
+        assertNotEquals(DiskLruIndex.keyOf("ab", "c"), DiskLruIndex.keyOf("a", "bc"));
+        assertEquals(40, DiskLruIndex.keyOf("url").length());
+    }
+
+    private void write(DiskLruIndex index, String name, int size) throws IOException {
+        fill(new File(index.getDir(), name), size);
+        index.put(name);
+    }
+
+    private static void fill(File file, int size) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[size]);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.streamliners.galleryapp.helpers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link PinnedRenders}
+ */
+public class PinnedRendersTest {
+
+    private ExecutorService executor;
+    private final List<String> unpinned = Collections.synchronizedList(new ArrayList<String>());
+    private PinnedRenders<String> renders;
+
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(3);
+        renders = new PinnedRenders<>(executor, new PinnedRenders.Unpinner<String>() {
+            @Override
+            public void unpin(String result) {
+                unpinned.add(result);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void close_unpinsEveryRender() throws Exception {
+        for (final String name : Arrays.asList("a", "b", "c")) {
+            renders.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return name;
+                }
+            });
+        }
+        for (int i = 0; i < 3; i++) {
+            renders.take().get();
+        }
+        assertTrue(unpinned.isEmpty());
+
+        renders.close();
+        assertEquals(Arrays.asList("a", "b", "c"), sorted(unpinned));
+    }
+
+    @Test
+    public void failedExport_unpinsRendersCompletingAfterTheClose() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        renders.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return "done";
+            }
+        });
+        renders.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw new IOException("Image not found");
+            }
+        });
+        renders.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                //Running when the export fails, completes anyway
+                started.countDown();
+                awaitUninterruptibly(closed);
+                return "late";
+            }
+        });
+
+        //The archive stops at the failed render, as writeArchive does
+        started.await();
+        try {
+            for (int i = 0; i < 3; i++) {
+                renders.take().get();
+            }
+            fail("Failed render taken");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        renders.close();
+        closed.countDown();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("done", "late"), sorted(unpinned));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                //Cancelled, the render doesn't stop
+            }
+        }
+    }
+
+    private static List<String> sorted(List<String> strings) {
+        List<String> sorted = new ArrayList<>(strings);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,108 @@
+package com.streamliners.galleryapp.helpers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link RedirectURLHelper}, against a local server stubbing the redirects
+ */
+public class RedirectURLHelperTest {
+
+    private HttpServer server;
+    private String baseUrl;
+
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        redirect("/random", "http://127.0.0.1:" + server.getAddress().getPort() + "/id/1");
+        redirect("/id/1", "../image/1.jpg");
+        redirect("/loop", "/loop");
+        server.createContext("/image/1.jpg", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, "jpeg".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void follow_readsFinalResponseAfterRedirects() throws IOException {
+        HttpURLConnection connection = RedirectURLHelper.follow(baseUrl + "/random", "GET");
+
+        assertEquals(baseUrl + "/image/1.jpg", connection.getURL().toString());
+        assertEquals("jpeg", read(connection.getInputStream()));
+    }
+
+    @Test
+    public void follow_resolvesUrlWithHead() throws IOException {
+        HttpURLConnection connection = RedirectURLHelper.follow(baseUrl + "/id/1", "HEAD");
+
+        assertEquals(baseUrl + "/image/1.jpg", connection.getURL().toString());
+        connection.getInputStream().close();
+    }
+
+    @Test(expected = IOException.class)
+    public void follow_failsOnRedirectLoop() throws IOException {
+        RedirectURLHelper.follow(baseUrl + "/loop", "GET");
+    }
+
+    @Test(expected = IOException.class)
+    public void follow_failsOnMissingImage() throws IOException {
+        RedirectURLHelper.follow(baseUrl + "/missing", "GET");
+    }
+
+    private void redirect(String path, final String location) {
+        server.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Location", location);
+                respond(exchange, 302, new byte[0]);
+            }
+        });
+    }
+
+    private static void respond(HttpExchange exchange, int code, byte[] body) throws IOException {
+        boolean isHead = "HEAD".equals(exchange.getRequestMethod());
+        exchange.sendResponseHeaders(code, isHead || body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (!isHead) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.streamliners.galleryapp.store;
+
+import com.streamliners.galleryapp.models.Item;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link ChangeTrackingList}
+ */
+public class ChangeTrackingListTest {
+
+    @Test
+    public void removeThenInsertOfSameItem_isRecordedAsMove() {
+        ChangeTrackingList list = new ChangeTrackingList();
+        Item a = new Item(1, "a", 1, "x"), b = new Item(2, "b", 2, "y"), c = new Item(3, "c", 3, "z");
+        list.load(Arrays.asList(a, b, c));
+
+        list.add(2, list.remove(0));
+
+        List<ItemChange> changes = list.drainChanges();
+        assertEquals(1, changes.size());
+        assertEquals(ItemChange.MOVE, changes.get(0).op);
+        assertEquals(0, changes.get(0).position);
+        assertEquals(2, changes.get(0).toPosition);
+        assertEquals(Arrays.asList(b, c, a), list);
+    }
+
+    @Test
+    public void removeThenInsertOfOtherItem_isRecordedAsBoth() {
+        ChangeTrackingList list = new ChangeTrackingList();
+        list.load(Arrays.asList(new Item(1, "a", 1, "x"), new Item(2, "b", 2, "y")));
+
+        list.remove(0);
+        list.add(0, new Item(3, "c", 3, "z"));
+
+        List<ItemChange> changes = list.drainChanges();
+        assertEquals(2, changes.size());
+        assertEquals(ItemChange.DELETE, changes.get(0).op);
+        assertEquals(ItemChange.INSERT, changes.get(1).op);
+    }
+
+    @Test
+    public void drainedChanges_replayOntoTheSavedItems() {
+        List<Item> saved = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            saved.add(new Item(i, "url" + i, i, "label" + i));
+        }
+        ChangeTrackingList list = new ChangeTrackingList();
+        list.load(saved);
+        int loadedCount = list.getChangeCount();
+
+        list.set(1, new Item(2, "edited", 2, "edited"));
+        list.add(0, list.remove(4));
+        list.remove(3);
+        list.add(new Item(6, "url6", 6, "label6"));
+
+        assertTrue(list.hasChanges());
+        assertEquals(loadedCount + 5, list.getChangeCount());
+
+        List<Item> replayed = new ArrayList<>(saved);
+        for (ItemChange change : list.drainChanges()) {
+            change.applyTo(replayed);
+        }
+        assertEquals(list, replayed);
+        assertEquals("edited", replayed.get(2).url);
+        assertFalse(list.hasChanges());
+    }
+}
@@ -0,0 +1,151 @@
+package com.streamliners.galleryapp.store;
+
+import com.google.gson.Gson;
+import com.streamliners.galleryapp.models.Item;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link GalleryStore}
+ */
+public class GalleryStoreTest {
+
+    private static final int BENCHMARK_ITEM_COUNT = 5000;
+    private static final int BENCHMARK_EDITS = 50;
+
+    private File dir;
+
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("gallery", "");
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+    }
+
+    @Test
+    public void append_keepsChangesAcrossReopening() throws IOException {
+        GalleryStore store = new GalleryStore(dir);
+        assertTrue(store.isEmpty());
+        Item a = new Item(1, "a", 1, "x"), b = new Item(2, "b", 2, "y");
+        store.saveAll(Arrays.asList(a, b));
+        store.insert(1, new Item(3, "c", 3, "z"));
+        store.update(0, new Item(1, "edited", 4, "x"));
+        store.move(2, 0);
+        store.delete(1);
+
+        List<Item> items = new GalleryStore(dir).loadAll();
+        assertEquals(Arrays.asList(b, new Item(3, "c", 3, "z")), items);
+    }
+
+    @Test
+    public void benchmark_appendsEditsInsteadOfRewritingAGsonBlob() throws IOException {
+        List<Item> items = new ArrayList<>();
+        String[] labels = {"Dog", "Cat", "Sky", "Mountain", "Beach", "Flower", "Car", "Food"};
+        for (int i = 0; i < BENCHMARK_ITEM_COUNT; i++) {
+            items.add(new Item(1000 + i, "https://fastly.picsum.photos/id/" + i + "/1080/720.jpg",
+                    0xFF000000 | i * 997, labels[i % labels.length]));
+        }
+
+        //Store: the items appended at once, then every edit appended & synced
+        long startTime = System.nanoTime();
+        GalleryStore store = new GalleryStore(dir);
+        List<ItemChange> appends = new ArrayList<>();
+        for (Item item : items) {
+            appends.add(ItemChange.append(item));
+        }
+        store.append(appends);
+        long storeSaveTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_EDITS; i++) {
+            Item edited = new Item(items.get(i * 97).id, "edited" + i, i, "Edited");
+            items.set(i * 97, edited);
+            store.update(i * 97, edited);
+        }
+        long storeEditTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        List<Item> loaded = new GalleryStore(dir).loadAll();
+        long storeLoadTime = System.nanoTime() - startTime;
+        assertEquals(items, loaded);
+        assertEquals("edited0", loaded.get(0).url);
+
+        //Baseline: the whole list as a Gson blob, written again on every edit
+        Gson gson = new Gson();
+        File blob = new File(dir, "gallery.json");
+        startTime = System.nanoTime();
+        writeBlob(gson, items, blob);
+        long gsonSaveTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_EDITS; i++) {
+            writeBlob(gson, items, blob);
+        }
+        long gsonEditTime = System.nanoTime() - startTime;
+
+        startTime = System.nanoTime();
+        Item[] parsed;
+        try (Reader in = new InputStreamReader(new FileInputStream(blob), StandardCharsets.UTF_8)) {
+            parsed = gson.fromJson(in, Item[].class);
+        }
+        long gsonLoadTime = System.nanoTime() - startTime;
+        assertEquals(items, Arrays.asList(parsed));
+
+        System.out.println("GalleryStore vs Gson blob, " + BENCHMARK_ITEM_COUNT + " items: save "
+                + millis(storeSaveTime) + " vs " + millis(gsonSaveTime) + " ms, "
+                + BENCHMARK_EDITS + " edits " + millis(storeEditTime) + " vs " + millis(gsonEditTime) + " ms ("
+                + ratio(storeEditTime, gsonEditTime) + "), load " + millis(storeLoadTime) + " vs "
+                + millis(gsonLoadTime) + " ms (" + ratio(storeLoadTime, gsonLoadTime) + ")");
+    }
+
+    private static void writeBlob(Gson gson, List<Item> items, File file) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gson.toJson(items, writer);
+            writer.flush();
+            out.getFD().sync();
+        }
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1000000;
+    }
+
+    private static String ratio(long value, long baseline) {
+        return String.format(Locale.ROOT, "%.2fx", (double) value / baseline);
+    }
+}
@@ -0,0 +1,184 @@
+package com.streamliners.galleryapp.store;
+
+import com.google.gson.Gson;
+import com.streamliners.galleryapp.models.Item;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link ItemCodec}
+ */
+public class ItemCodecTest {
+
+    private static final int BENCHMARK_ITEM_COUNT = 20000;
+    private static final int BENCHMARK_ROUNDS = 5;
+
+    @Test
+    public void records_roundTrip() throws IOException {
+        Item first = new Item(300, "https://picsum.photos/id/1", 0xFF336699, "Dog");
+        Item second = new Item(1L << 40, "https://picsum.photos/id/2", -1, "Dog");
+        byte[] file = encode(ItemChange.append(first), ItemChange.insert(0, second),
+                ItemChange.update(1, new Item(300, "edited", 7, "Caf\u00e9")),
+                ItemChange.move(0, 1), ItemChange.delete(1));
+
+        ItemCodec.LabelTable labels = new ItemCodec.LabelTable();
+        ItemCodec.Reader reader = new ItemCodec.Reader(new ByteArrayInputStream(file), labels);
+        assertEquals(ItemCodec.VERSION, reader.getVersion());
+
+        ItemChange change = reader.read();
+        assertEquals(ItemChange.APPEND, change.op);
+        assertItem(first, change.item);
+
+        change = reader.read();
+        assertEquals(ItemChange.INSERT, change.op);
+        assertEquals(0, change.position);
+        assertItem(second, change.item);
+        //Repeated labels are decoded as the same instance
+        assertSame(labels.get(0), change.item.label);
+
+        change = reader.read();
+        assertEquals(ItemChange.UPDATE, change.op);
+        assertEquals(1, change.position);
+        assertEquals("Caf\u00e9", change.item.label);
+
+        change = reader.read();
+        assertEquals(ItemChange.MOVE, change.op);
+        assertEquals(0, change.position);
+        assertEquals(1, change.toPosition);
+
+        change = reader.read();
+        assertEquals(ItemChange.DELETE, change.op);
+        assertEquals(1, change.position);
+        assertNull(change.item);
+
+        assertNull(reader.read());
+        assertEquals(file.length, reader.getOffset());
+    }
+
+    @Test
+    public void skip_readsIdsWithoutDecodingItems() throws IOException {
+        byte[] file = encode(ItemChange.append(new Item(5, "a", 1, "Cat")),
+                ItemChange.append(new Item(6, "b", 2, "Cat")));
+
+        ItemCodec.Reader reader = new ItemCodec.Reader(new ByteArrayInputStream(file), new ItemCodec.LabelTable());
+        ItemChange change = reader.skip();
+        assertNull(change.item);
+        assertEquals(5, change.itemId);
+        assertEquals(6, reader.skip().itemId);
+        assertNull(reader.skip());
+    }
+
+    @Test
+    public void tornRecords_areDetected() throws IOException {
+        byte[] file = encode(ItemChange.append(new Item(1, "a", 1, "x")),
+                ItemChange.append(new Item(2, "b", 2, "y")));
+
+        //Incomplete last record, e.g. the app was killed while writing it
+        byte[] truncated = Arrays.copyOf(file, file.length - 3);
+        ItemCodec.Reader reader = new ItemCodec.Reader(new ByteArrayInputStream(truncated), new ItemCodec.LabelTable());
+        assertEquals(1, reader.read().item.id);
+        long validLength = reader.getOffset();
+        try {
+            reader.read();
+            fail();
+        } catch (EOFException expected) {
+            assertEquals(validLength, reader.getOffset());
+        }
+
+        //Payload not matching its CRC
+        byte[] corrupted = file.clone();
+        corrupted[file.length - 6] ^= 1;
+        reader = new ItemCodec.Reader(new ByteArrayInputStream(corrupted), new ItemCodec.LabelTable());
+        reader.read();
+        try {
+            reader.read();
+            fail();
+        } catch (EOFException expected) {
+            //Torn record
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void header_isChecked() throws IOException {
+        new ItemCodec.Reader(new ByteArrayInputStream(new byte[]{'G', 'I', 'F', '8', '9'}), new ItemCodec.LabelTable());
+    }
+
+    @Test
+    public void benchmark_isSmallerThanGsonJson() throws IOException {
+        List<Item> items = new ArrayList<>();
+        String[] labels = {"Dog", "Cat", "Sky", "Mountain", "Beach", "Flower", "Car", "Food"};
+        for (int i = 0; i < BENCHMARK_ITEM_COUNT; i++) {
+            items.add(new Item(1000 + i, "https://fastly.picsum.photos/id/" + i + "/1080/720.jpg?hmac=" + (i * 7919),
+                    0xFF000000 | i * 997, labels[i % labels.length]));
+        }
+        Gson gson = new Gson();
+
+        long codecTime = Long.MAX_VALUE, gsonTime = Long.MAX_VALUE;
+        int codecSize = 0, gsonSize = 0;
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            long startTime = System.nanoTime();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ItemCodec.writeHeader(out);
+            ItemCodec.Writer writer = new ItemCodec.Writer(out, new ItemCodec.LabelTable());
+            for (Item item : items) {
+                writer.write(ItemChange.append(item));
+            }
+            byte[] file = out.toByteArray();
+            ItemCodec.Reader reader = new ItemCodec.Reader(new ByteArrayInputStream(file), new ItemCodec.LabelTable());
+            List<Item> decoded = new ArrayList<>();
+            ItemChange change;
+            while ((change = reader.read()) != null) {
+                decoded.add(change.item);
+            }
+            codecTime = Math.min(codecTime, System.nanoTime() - startTime);
+            codecSize = file.length;
+            assertEquals(items, decoded);
+
+            startTime = System.nanoTime();
+            byte[] json = gson.toJson(items).getBytes(StandardCharsets.UTF_8);
+            Item[] parsed = gson.fromJson(new String(json, StandardCharsets.UTF_8), Item[].class);
+            gsonTime = Math.min(gsonTime, System.nanoTime() - startTime);
+            gsonSize = json.length;
+            assertEquals(items, Arrays.asList(parsed));
+        }
+
+        System.out.println("ItemCodec vs Gson, " + BENCHMARK_ITEM_COUNT + " items encoded & decoded: "
+                + codecSize + " vs " + gsonSize + " bytes (" + ratio(codecSize, gsonSize) + "), "
+                + codecTime / 1000000 + " vs " + gsonTime / 1000000 + " ms (" + ratio(codecTime, gsonTime) + ")");
+        //Repeated labels are written once & numbers aren't spelled out
+        assertTrue(codecSize < gsonSize);
+    }
+
+    private static String ratio(long value, long baseline) {
+        return String.format(Locale.ROOT, "%.2fx", (double) value / baseline);
+    }
+
+    private static byte[] encode(ItemChange... changes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ItemCodec.writeHeader(out);
+        ItemCodec.Writer writer = new ItemCodec.Writer(out, new ItemCodec.LabelTable());
+        for (ItemChange change : changes) {
+            writer.write(change);
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertItem(Item expected, Item actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.url, actual.url);
+        assertEquals(expected.color, actual.color);
+        assertEquals(expected.label, actual.label);
+    }
+}
@@ -0,0 +1,213 @@
+package com.streamliners.galleryapp.store;
+
+import com.streamliners.galleryapp.models.Item;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link ItemLog}
+ */
+public class ItemLogTest {
+
+    private File file;
+
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("gallery", ".log");
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Test
+    public void open_replaysEveryOp() throws IOException {
+        ItemLog log = ItemLog.open(file);
+        Item a = new Item(1, "a", 1, "x"), b = new Item(2, "b", 2, "y"), c = new Item(3, "c", 3, "x");
+        log.append(Arrays.asList(ItemChange.append(a), ItemChange.append(b), ItemChange.insert(0, c)));
+        log.append(Arrays.asList(ItemChange.update(1, new Item(1, "edited", 4, "z")),
+                ItemChange.move(0, 2), ItemChange.delete(0)));
+        log.close();
+
+        log = ItemLog.open(file);
+        assertEquals(2, log.size());
+        assertEquals(6, log.getRecordCount());
+        assertArrayEquals(new long[]{2, 3}, log.ids());
+        assertEquals(3, log.idAt(1));
+        assertEquals("c", log.get(1).url);
+        assertEquals("x", log.get(1).label);
+        log.close();
+    }
+
+    @Test
+    public void open_reservesIdsOfTheLog() throws IOException {
+        ItemLog log = ItemLog.open(file);
+        long id = Item.getLastId() + 1000;
+        log.append(Arrays.asList(ItemChange.append(new Item(id, "a", 1, "x"))));
+        log.close();
+
+        ItemLog.open(file).close();
+        assertTrue(new Item("b", 2, "y").id > id);
+    }
+
+    @Test
+    public void open_truncatesTornRecord() throws IOException {
+        ItemLog log = ItemLog.open(file);
+        log.append(Arrays.asList(ItemChange.append(new Item(1, "a", 1, "x")),
+                ItemChange.append(new Item(2, "b", 2, "y"))));
+        log.close();
+
+        //Last record cut short, as if the app was killed while writing it
+        long end;
+        try (ItemCodec.Reader reader = new ItemCodec.Reader(new FileInputStream(file), new ItemCodec.LabelTable())) {
+            reader.read();
+            reader.read();
+            end = reader.getOffset();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(end - 2);
+        }
+
+        log = ItemLog.open(file);
+        assertArrayEquals(new long[]{1}, log.ids());
+
+        //Records written after the truncation are read back
+        log.append(Arrays.asList(ItemChange.append(new Item(3, "c", 3, "z"))));
+        log.close();
+        log = ItemLog.open(file);
+        assertArrayEquals(new long[]{1, 3}, log.ids());
+        assertEquals("c", log.get(1).url);
+        log.close();
+    }
+
+    @Test
+    public void open_truncatesFromCorruptRecord() throws IOException {
+        ItemLog log = ItemLog.open(file);
+        log.append(Arrays.asList(ItemChange.append(new Item(1, "a", 1, "x")),
+                ItemChange.append(new Item(2, "b", 2, "y")), ItemChange.append(new Item(3, "c", 3, "z"))));
+        log.close();
+
+        //Byte of the second record flipped, its CRC no longer matches
+        long start;
+        try (ItemCodec.Reader reader = new ItemCodec.Reader(new FileInputStream(file), new ItemCodec.LabelTable())) {
+            reader.read();
+            start = reader.getOffset();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(start + 3);
+            raf.write(raf.read() ^ 0xFF);
+        }
+
+        log = ItemLog.open(file);
+        assertArrayEquals(new long[]{1}, log.ids());
+        log.append(Arrays.asList(ItemChange.append(new Item(4, "d", 4, "w"))));
+        log.close();
+        log = ItemLog.open(file);
+        assertArrayEquals(new long[]{1, 4}, log.ids());
+        log.close();
+    }
+
+    @Test
+    public void open_truncatesRecordNotMatchingTheList() throws IOException {
+        //Records matching their CRC, the second one deleting a position past the end
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            ItemCodec.writeHeader(out);
+            ItemCodec.Writer writer = new ItemCodec.Writer(out, new ItemCodec.LabelTable());
+            writer.write(ItemChange.append(new Item(1, "a", 1, "x")));
+            writer.write(ItemChange.insert(5, new Item(2, "b", 2, "lost")));
+            writer.write(ItemChange.append(new Item(3, "c", 3, "y")));
+            writer.flush();
+        }
+
+        ItemLog log = ItemLog.open(file);
+        assertArrayEquals(new long[]{1}, log.ids());
+
+        //Label of the truncated record isn't in the table, a new record defines it again
+        log.append(Arrays.asList(ItemChange.append(new Item(4, "d", 4, "lost"))));
+        log.close();
+        log = ItemLog.open(file);
+        assertArrayEquals(new long[]{1, 4}, log.ids());
+        assertEquals("lost", log.get(1).label);
+        log.close();
+    }
+
+    @Test
+    public void open_failsOnForeignFileWithoutTouchingIt() throws IOException {
+        byte[] content = "PK\u0003\u0004 not a gallery file".getBytes(StandardCharsets.UTF_8);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+
+        try {
+            ItemLog.open(file);
+            fail("Foreign file opened");
+        } catch (IOException e) {
+            //Expected
+        }
+        byte[] read = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            assertEquals(read.length, in.read(read));
+        }
+        assertArrayEquals(content, read);
+    }
+
+    @Test
+    public void append_writesNothingIfAChangeDoesNotFit() throws IOException {
+        ItemLog log = ItemLog.open(file);
+        log.append(Arrays.asList(ItemChange.append(new Item(1, "a", 1, "x")),
+                ItemChange.append(new Item(2, "b", 2, "y"))));
+
+        try {
+            log.append(Arrays.asList(ItemChange.append(new Item(3, "c", 3, "z")), ItemChange.delete(3)));
+            fail("Change out of bounds appended");
+        } catch (IndexOutOfBoundsException e) {
+            //Expected
+        }
+        assertArrayEquals(new long[]{1, 2}, log.ids());
+        assertEquals(2, log.getRecordCount());
+
+        log.append(Arrays.asList(ItemChange.move(0, 1)));
+        log.close();
+        log = ItemLog.open(file);
+        assertArrayEquals(new long[]{2, 1}, log.ids());
+        log.close();
+    }
+
+    @Test
+    public void rewrite_replacesTheRecords() throws IOException {
+        ItemLog log = ItemLog.open(file);
+        List<Item> items = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            log.append(Arrays.asList(ItemChange.append(new Item(i, "url" + i, i, "label"))));
+            items.add(0, new Item(i, "url" + i, i, "label"));
+        }
+
+        log.rewrite(items);
+        assertEquals(10, log.getRecordCount());
+        log.close();
+
+        log = ItemLog.open(file);
+        assertArrayEquals(new long[]{10, 9, 8, 7, 6, 5, 4, 3, 2, 1}, log.ids());
+        assertEquals("url10", log.get(0).url);
+        log.close();
+    }
+}
@@ -0,0 +1,153 @@
+package com.streamliners.galleryapp.store;
+
+import com.streamliners.galleryapp.models.Item;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link PagedItemList}
+ */
+public class PagedItemListTest {
+
+    private File file;
+
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("gallery", ".log");
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Test
+    public void get_readsUnwrittenChangesOverTheLog() throws IOException {
+        ItemLog log = ItemLog.open(file);
+        List<Item> expected = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            expected.add(new Item("url" + i, i, "label" + i));
+        }
+        log.rewrite(expected);
+        PagedItemList paged = new PagedItemList(log);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            int op = random.nextInt(4);
+            if (op == 0 || expected.size() < 2) {
+                int position = random.nextInt(expected.size() + 1);
+                Item item = new Item("new" + i, i, "new");
+                expected.add(position, item);
+                paged.add(position, item);
+            } else if (op == 1) {
+                int position = random.nextInt(expected.size());
+                Item item = new Item(expected.get(position).id, "edited" + i, i, "edited");
+                expected.set(position, item);
+                paged.set(position, item);
+            } else if (op == 2) {
+                int position = random.nextInt(expected.size());
+                expected.remove(position);
+                paged.remove(position);
+            } else {
+                paged.flush();
+            }
+            assertSameItems(expected, paged);
+        }
+
+        paged.flush();
+        log.close();
+        assertSameItems(expected, new PagedItemList(ItemLog.open(file)));
+    }
+
+    @Test
+    public void get_readsTheSameItemsWhileChangesAreAppended() throws Exception {
+        ItemLog log = ItemLog.open(file);
+        final List<Item> expected = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            expected.add(new Item("url" + i, i, "label" + i));
+        }
+        log.rewrite(expected);
+        final PagedItemList paged = new PagedItemList(log);
+
+        Random random = new Random(11);
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 20; i++) {
+                int position = random.nextInt(expected.size());
+                if (random.nextBoolean()) {
+                    Item item = new Item("new" + round + "." + i, i, "new");
+                    expected.add(position, item);
+                    paged.add(position, item);
+                } else {
+                    expected.remove(position);
+                    paged.remove(position);
+                }
+            }
+
+            //Read from another thread while the changes are swapped into the log
+            final Throwable[] failure = new Throwable[1];
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        assertSameItems(expected, paged);
+                    } catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            reader.start();
+            paged.flush();
+            reader.join();
+            if (failure[0] != null) {
+                throw new AssertionError("Round " + round, failure[0]);
+            }
+        }
+        assertSameItems(expected, paged);
+    }
+
+    @Test
+    public void compact_keepsItemsWithoutReplayingTheLog() throws IOException {
+        ItemLog log = ItemLog.open(file);
+        PagedItemList paged = new PagedItemList(log);
+        List<Item> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Item item = new Item("url" + i, i, "label" + (i % 5));
+            expected.add(item);
+            paged.add(i, item);
+        }
+        for (int i = 0; i < 100; i++) {
+            expected.remove(0);
+            paged.remove(0);
+        }
+        paged.flush();
+
+        log.compact();
+
+        assertEquals(expected.size(), log.getRecordCount());
+        assertSameItems(expected, paged);
+    }
+
+    private static void assertSameItems(List<Item> expected, PagedItemList paged) {
+        assertEquals(expected.size(), paged.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Item item = paged.get(i);
+            assertEquals(expected.get(i).id, item.id);
+            assertEquals(expected.get(i).url, item.url);
+            assertEquals(expected.get(i).id, paged.idAt(i));
+        }
+    }
+}